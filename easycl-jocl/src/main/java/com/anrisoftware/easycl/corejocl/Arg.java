@@ -143,6 +143,93 @@ public abstract class Arg {
 
     };
 
+    public static final Arg aimage = new Arg() {
+
+        @Override
+        public boolean checkArg(Object value) {
+            return value instanceof Image;
+        }
+
+        @Override
+        public long getSize(Object value) {
+            return Sizeof.cl_mem;
+        }
+
+        @Override
+        public Pointer getPointer(Object value) {
+            var image = (Image) value;
+            return Pointer.to(image.get());
+        }
+
+    };
+
+    public static final Arg asampler = new Arg() {
+
+        @Override
+        public boolean checkArg(Object value) {
+            return value instanceof Sampler;
+        }
+
+        @Override
+        public long getSize(Object value) {
+            return Sizeof.cl_sampler;
+        }
+
+        @Override
+        public Pointer getPointer(Object value) {
+            var sampler = (Sampler) value;
+            return Pointer.to(sampler.get());
+        }
+
+    };
+
+    /**
+     * Shared virtual memory argument. The pointer is set with
+     * <code>clSetKernelArgSVMPointer</code>.
+     */
+    public static final Arg asvm = new Arg() {
+
+        @Override
+        public boolean checkArg(Object value) {
+            return value instanceof SvmBuffer;
+        }
+
+        @Override
+        public long getSize(Object value) {
+            return Sizeof.POINTER;
+        }
+
+        @Override
+        public Pointer getPointer(Object value) {
+            var svm = (SvmBuffer) value;
+            return svm.get();
+        }
+
+    };
+
+    /**
+     * <code>__local</code> memory argument. The value is the size in bytes of
+     * the memory that is allocated for each work-group.
+     */
+    public static final Arg alocal = new Arg() {
+
+        @Override
+        public boolean checkArg(Object value) {
+            return value instanceof Number;
+        }
+
+        @Override
+        public long getSize(Object value) {
+            return ((Number) value).longValue();
+        }
+
+        @Override
+        public Pointer getPointer(Object value) {
+            return null;
+        }
+
+    };
+
     public static final Arg aqueue = new Arg() {
 
         @Override
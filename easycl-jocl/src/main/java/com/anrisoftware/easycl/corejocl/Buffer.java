@@ -15,14 +15,27 @@
  */
 package com.anrisoftware.easycl.corejocl;
 
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.validState;
 import static org.jocl.CL.CL_BLOCKING;
+import static org.jocl.CL.CL_BUFFER_CREATE_TYPE_REGION;
+import static org.jocl.CL.CL_MAP_WRITE_INVALIDATE_REGION;
+import static org.jocl.CL.CL_MEM_ALLOC_HOST_PTR;
 import static org.jocl.CL.CL_MEM_READ_ONLY;
 import static org.jocl.CL.CL_MEM_READ_WRITE;
 import static org.jocl.CL.CL_MEM_SIZE;
 import static org.jocl.CL.CL_MEM_USE_HOST_PTR;
+import static org.jocl.CL.CL_NON_BLOCKING;
 import static org.jocl.CL.clCreateBuffer;
+import static org.jocl.CL.clCreateSubBuffer;
+import static org.jocl.CL.clEnqueueCopyBuffer;
+import static org.jocl.CL.clEnqueueCopyBufferRect;
+import static org.jocl.CL.clEnqueueFillBuffer;
+import static org.jocl.CL.clEnqueueMapBuffer;
 import static org.jocl.CL.clEnqueueReadBuffer;
+import static org.jocl.CL.clEnqueueReadBufferRect;
 import static org.jocl.CL.clEnqueueWriteBuffer;
+import static org.jocl.CL.clEnqueueWriteBufferRect;
 import static org.jocl.CL.clGetMemObjectInfo;
 import static org.jocl.CL.clReleaseMemObject;
 
@@ -34,14 +47,23 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
 import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.jocl.Pointer;
 import org.jocl.Sizeof;
+import org.jocl.cl_buffer_region;
 import org.jocl.cl_command_queue;
 import org.jocl.cl_context;
+import org.jocl.cl_event;
 import org.jocl.cl_mem;
 
 import com.google.inject.assistedinject.Assisted;
@@ -59,6 +81,14 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
 
     private final cl_context context;
 
+    private final Buffer parent;
+
+    private final long origin;
+
+    private final AtomicInteger openSlices = new AtomicInteger();
+
+    private long memBaseAddrAlign;
+
     private cl_mem mem;
 
     // #################################
@@ -68,6 +98,8 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
     @AssistedInject
     public Buffer(@Assisted Supplier<cl_context> context, @Assisted("flags") long flags, @Assisted("size") long size) {
         this.context = context.get();
+        this.parent = null;
+        this.origin = 0;
         this.mem = clCreateBuffer(context.get(), flags, size, null, null);
         log.debug("Created buffer {}", this);
     }
@@ -76,53 +108,106 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
     public Buffer(@Assisted Supplier<cl_context> context, @Assisted("flags") long flags, @Assisted("size") long size,
             @Assisted Pointer ptr) {
         this.context = context.get();
+        this.parent = null;
+        this.origin = 0;
         this.mem = clCreateBuffer(context.get(), flags, size, ptr, null);
         log.debug("Created buffer {}", this);
     }
 
+    /**
+     * Wraps an existing {@link cl_mem}. The buffer takes the ownership of the
+     * memory object.
+     *
+     * @param context the {@link cl_context} of the memory object.
+     * @param mem     the {@link cl_mem}.
+     */
+    protected Buffer(cl_context context, cl_mem mem) {
+        this.context = context;
+        this.parent = null;
+        this.origin = 0;
+        this.mem = mem;
+        log.debug("Wrapped buffer {}", this);
+    }
+
+    private Buffer(Buffer parent, cl_mem mem, long origin) {
+        this.context = parent.context;
+        this.parent = parent;
+        this.origin = origin;
+        this.mem = mem;
+        log.debug("Created sub-buffer {}", this);
+    }
+
     // #################################
     // List
     // #################################
 
     public static Supplier<cl_mem> fromBytes(BufferFactory bufferFactory, Supplier<cl_context> context,
             Supplier<cl_command_queue> queue, List<Byte> list, boolean readOnly, boolean useHostPtr) {
-        var array = ArrayUtils.toPrimitive(list.toArray(new Byte[0]));
+        var array = new byte[list.size()];
+        var i = 0;
+        for (var v : list) {
+            array[i++] = v;
+        }
         return fromBytes(bufferFactory, context, queue, array, readOnly, useHostPtr);
     }
 
     public static Supplier<cl_mem> fromChars(BufferFactory bufferFactory, Supplier<cl_context> context,
             Supplier<cl_command_queue> queue, List<Character> list, boolean readOnly, boolean useHostPtr) {
-        var array = ArrayUtils.toPrimitive(list.toArray(new Character[0]));
+        var array = new char[list.size()];
+        var i = 0;
+        for (var v : list) {
+            array[i++] = v;
+        }
         return fromChars(bufferFactory, context, queue, array, readOnly, useHostPtr);
     }
 
     public static Supplier<cl_mem> fromDouble(BufferFactory bufferFactory, Supplier<cl_context> context,
             Supplier<cl_command_queue> queue, List<Double> list, boolean readOnly, boolean useHostPtr) {
-        var array = ArrayUtils.toPrimitive(list.toArray(new Double[0]));
+        var array = new double[list.size()];
+        var i = 0;
+        for (var v : list) {
+            array[i++] = v;
+        }
         return fromDouble(bufferFactory, context, queue, array, readOnly, useHostPtr);
     }
 
     public static Supplier<cl_mem> fromFloat(BufferFactory bufferFactory, Supplier<cl_context> context,
             Supplier<cl_command_queue> queue, List<Float> list, boolean readOnly, boolean useHostPtr) {
-        var array = ArrayUtils.toPrimitive(list.toArray(new Float[0]));
+        var array = new float[list.size()];
+        var i = 0;
+        for (var v : list) {
+            array[i++] = v;
+        }
         return fromFloat(bufferFactory, context, queue, array, readOnly, useHostPtr);
     }
 
     public static Supplier<cl_mem> fromInt(BufferFactory bufferFactory, Supplier<cl_context> context,
             Supplier<cl_command_queue> queue, List<Integer> list, boolean readOnly, boolean useHostPtr) {
-        var array = ArrayUtils.toPrimitive(list.toArray(new Integer[0]));
+        var array = new int[list.size()];
+        var i = 0;
+        for (var v : list) {
+            array[i++] = v;
+        }
         return fromInt(bufferFactory, context, queue, array, readOnly, useHostPtr);
     }
 
     public static Supplier<cl_mem> fromLong(BufferFactory bufferFactory, Supplier<cl_context> context,
             Supplier<cl_command_queue> queue, List<Long> list, boolean readOnly, boolean useHostPtr) {
-        var array = ArrayUtils.toPrimitive(list.toArray(new Long[0]));
+        var array = new long[list.size()];
+        var i = 0;
+        for (var v : list) {
+            array[i++] = v;
+        }
         return fromLong(bufferFactory, context, queue, array, readOnly, useHostPtr);
     }
 
     public static Supplier<cl_mem> fromShort(BufferFactory bufferFactory, Supplier<cl_context> context,
             Supplier<cl_command_queue> queue, List<Short> list, boolean readOnly, boolean useHostPtr) {
-        var array = ArrayUtils.toPrimitive(list.toArray(new Short[0]));
+        var array = new short[list.size()];
+        var i = 0;
+        for (var v : list) {
+            array[i++] = v;
+        }
         return fromShort(bufferFactory, context, queue, array, readOnly, useHostPtr);
     }
 
@@ -165,6 +250,326 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
         return bufferFactory.create(context, queue, ShortBuffer.wrap(array), readOnly, useHostPtr);
     }
 
+    // #################################
+    // Primitive sources
+    // #################################
+
+    /**
+     * The maximum size in bytes of each of the two pinned staging buffers that
+     * are used to fill a buffer.
+     */
+    private static final int FILL_WINDOW_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The number of elements that are filled by one task in parallel fills.
+     */
+    private static final int FILL_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Creates a new buffer from the values of the iterator. The values are
+     * written without boxing into two mapped, pinned staging buffers of at most
+     * 16 MiB each and written from there into the new buffer, while the next
+     * window is filled. The new buffer is a plain device buffer, so it is not
+     * placed in host memory on discrete GPUs.
+     *
+     * @param bufferFactory the {@link BufferFactory}.
+     * @param context       the {@link Supplier} that supplies the
+     *                      {@link cl_context}.
+     * @param queue         the {@link Supplier} that supplies the
+     *                      {@link cl_command_queue}.
+     * @param values        the {@link PrimitiveIterator.OfInt} values.
+     * @param count         the number of values.
+     * @param readOnly      set to <code>true</code> to have read only buffer.
+     */
+    public static Supplier<cl_mem> fromInt(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, PrimitiveIterator.OfInt values, long count, boolean readOnly) {
+        return stageWindows(bufferFactory, context, queue, count, Sizeof.cl_int, readOnly, false, (w, first, n) -> {
+            var view = w.asIntBuffer();
+            for (int i = 0; i < n; i++) {
+                view.put(i, values.nextInt());
+            }
+        });
+    }
+
+    /**
+     * Creates a new buffer from the values of the stream.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, PrimitiveIterator.OfInt,
+     *      long, boolean)
+     */
+    public static Supplier<cl_mem> fromInt(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, IntStream values, long count, boolean readOnly) {
+        return fromInt(bufferFactory, context, queue, values.iterator(), count, readOnly);
+    }
+
+    /**
+     * Creates a new buffer and sets each element to the value returned by the
+     * filler for the index of the element.
+     *
+     * @param filler   the {@link IntUnaryOperator} that returns the value of the
+     *                 element of the index.
+     * @param parallel set to <code>true</code> to call the filler in parallel
+     *                 chunks.
+     * @see #fromInt(BufferFactory, Supplier, Supplier, PrimitiveIterator.OfInt,
+     *      long, boolean)
+     */
+    public static Supplier<cl_mem> fromInt(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, IntUnaryOperator filler, int count, boolean readOnly,
+            boolean parallel) {
+        return stageWindows(bufferFactory, context, queue, count, Sizeof.cl_int, readOnly, parallel, (w, first, n) -> {
+            var view = w.asIntBuffer();
+            for (int i = 0; i < n; i++) {
+                view.put(i, filler.applyAsInt((int) first + i));
+            }
+        });
+    }
+
+    /**
+     * Creates a new buffer from the values of the iterator.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, PrimitiveIterator.OfInt,
+     *      long, boolean)
+     */
+    public static Supplier<cl_mem> fromLong(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, PrimitiveIterator.OfLong values, long count, boolean readOnly) {
+        return stageWindows(bufferFactory, context, queue, count, Sizeof.cl_long, readOnly, false, (w, first, n) -> {
+            var view = w.asLongBuffer();
+            for (int i = 0; i < n; i++) {
+                view.put(i, values.nextLong());
+            }
+        });
+    }
+
+    /**
+     * Creates a new buffer from the values of the stream.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, PrimitiveIterator.OfInt,
+     *      long, boolean)
+     */
+    public static Supplier<cl_mem> fromLong(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, LongStream values, long count, boolean readOnly) {
+        return fromLong(bufferFactory, context, queue, values.iterator(), count, readOnly);
+    }
+
+    /**
+     * Creates a new buffer and sets each element to the value returned by the
+     * filler for the index of the element.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, IntUnaryOperator, int,
+     *      boolean, boolean)
+     */
+    public static Supplier<cl_mem> fromLong(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, IntToLongFunction filler, int count, boolean readOnly,
+            boolean parallel) {
+        return stageWindows(bufferFactory, context, queue, count, Sizeof.cl_long, readOnly, parallel, (w, first, n) -> {
+            var view = w.asLongBuffer();
+            for (int i = 0; i < n; i++) {
+                view.put(i, filler.applyAsLong((int) first + i));
+            }
+        });
+    }
+
+    /**
+     * Creates a new buffer from the values of the iterator.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, PrimitiveIterator.OfInt,
+     *      long, boolean)
+     */
+    public static Supplier<cl_mem> fromDouble(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, PrimitiveIterator.OfDouble values, long count, boolean readOnly) {
+        return stageWindows(bufferFactory, context, queue, count, Sizeof.cl_double, readOnly, false, (w, first, n) -> {
+            var view = w.asDoubleBuffer();
+            for (int i = 0; i < n; i++) {
+                view.put(i, values.nextDouble());
+            }
+        });
+    }
+
+    /**
+     * Creates a new buffer from the values of the stream.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, PrimitiveIterator.OfInt,
+     *      long, boolean)
+     */
+    public static Supplier<cl_mem> fromDouble(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, DoubleStream values, long count, boolean readOnly) {
+        return fromDouble(bufferFactory, context, queue, values.iterator(), count, readOnly);
+    }
+
+    /**
+     * Creates a new buffer and sets each element to the value returned by the
+     * filler for the index of the element.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, IntUnaryOperator, int,
+     *      boolean, boolean)
+     */
+    public static Supplier<cl_mem> fromDouble(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, IntToDoubleFunction filler, int count, boolean readOnly,
+            boolean parallel) {
+        return stageWindows(bufferFactory, context, queue, count, Sizeof.cl_double, readOnly, parallel,
+                (w, first, n) -> {
+                    var view = w.asDoubleBuffer();
+                    for (int i = 0; i < n; i++) {
+                        view.put(i, filler.applyAsDouble((int) first + i));
+                    }
+                });
+    }
+
+    /**
+     * Creates a new <code>float</code> buffer from the values of the iterator.
+     * The values are narrowed to <code>float</code>.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, PrimitiveIterator.OfInt,
+     *      long, boolean)
+     */
+    public static Supplier<cl_mem> fromFloat(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, PrimitiveIterator.OfDouble values, long count, boolean readOnly) {
+        return stageWindows(bufferFactory, context, queue, count, Sizeof.cl_float, readOnly, false, (w, first, n) -> {
+            var view = w.asFloatBuffer();
+            for (int i = 0; i < n; i++) {
+                view.put(i, (float) values.nextDouble());
+            }
+        });
+    }
+
+    /**
+     * Creates a new <code>float</code> buffer from the values of the stream. The
+     * values are narrowed to <code>float</code>.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, PrimitiveIterator.OfInt,
+     *      long, boolean)
+     */
+    public static Supplier<cl_mem> fromFloat(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, DoubleStream values, long count, boolean readOnly) {
+        return fromFloat(bufferFactory, context, queue, values.iterator(), count, readOnly);
+    }
+
+    /**
+     * Creates a new <code>float</code> buffer and sets each element to the value
+     * returned by the filler for the index of the element. The values are
+     * narrowed to <code>float</code>.
+     *
+     * @see #fromInt(BufferFactory, Supplier, Supplier, IntUnaryOperator, int,
+     *      boolean, boolean)
+     */
+    public static Supplier<cl_mem> fromFloat(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, IntToDoubleFunction filler, int count, boolean readOnly,
+            boolean parallel) {
+        return stageWindows(bufferFactory, context, queue, count, Sizeof.cl_float, readOnly, parallel,
+                (w, first, n) -> {
+                    var view = w.asFloatBuffer();
+                    for (int i = 0; i < n; i++) {
+                        view.put(i, (float) filler.applyAsDouble((int) first + i));
+                    }
+                });
+    }
+
+    /**
+     * Fills a window of mapped memory with <code>count</code> elements, starting
+     * with the element <code>first</code>.
+     */
+    private interface WindowFiller {
+
+        void fill(ByteBuffer window, long first, int count);
+    }
+
+    /**
+     * Fills the new buffer through two mapped, pinned staging buffers. The
+     * next window is filled on the host while the previous window is written,
+     * and only the older write is waited for before its staging buffer is
+     * filled again.
+     */
+    private static Supplier<cl_mem> stageWindows(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, long count, int elementSize, boolean readOnly, boolean parallel,
+            WindowFiller filler) {
+        isTrue(count > 0, "Count must be positive");
+        var flags = readOnly ? CL_MEM_READ_ONLY : CL_MEM_READ_WRITE;
+        var size = count * elementSize;
+        var buffer = (Buffer) bufferFactory.create(context, flags, size);
+        var windowCount = FILL_WINDOW_SIZE / elementSize;
+        var windowSize = Math.min(size, (long) windowCount * elementSize);
+        var staging = new Buffer[2];
+        var mapped = new MappedBuffer[2];
+        var writes = new Event[2];
+        var q = queue.get();
+        try {
+            int slot = 0;
+            for (long first = 0; first < count; first += windowCount, slot ^= 1) {
+                if (writes[slot] != null) {
+                    finishWrite(writes[slot]);
+                    writes[slot] = null;
+                }
+                if (staging[slot] == null) {
+                    staging[slot] = (Buffer) allocHostPtr(bufferFactory, context, CL_MEM_READ_ONLY, windowSize);
+                    mapped[slot] = staging[slot].map(q, CL_MAP_WRITE_INVALIDATE_REGION, 0, windowSize);
+                }
+                var n = (int) Math.min(windowCount, count - first);
+                var bytes = (long) n * elementSize;
+                var window = mapped[slot].get();
+                if (parallel) {
+                    fillParallel(window, first, n, elementSize, filler);
+                } else {
+                    filler.fill(window, first, n);
+                }
+                writes[slot] = buffer.writeAsync(q, first * elementSize, bytes, window);
+            }
+            for (int i = 0; i < writes.length; i++) {
+                if (writes[i] != null) {
+                    finishWrite(writes[i]);
+                    writes[i] = null;
+                }
+            }
+        } catch (RuntimeException e) {
+            for (var write : writes) {
+                if (write != null) {
+                    try {
+                        finishWrite(write);
+                    } catch (RuntimeException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+            }
+            closeQuietly(buffer);
+            throw e;
+        } finally {
+            for (int i = 0; i < staging.length; i++) {
+                if (mapped[i] != null) {
+                    mapped[i].close();
+                }
+                if (staging[i] != null) {
+                    closeQuietly(staging[i]);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private static void finishWrite(Event event) {
+        try (event) {
+            event.waitFor();
+        }
+    }
+
+    private static void closeQuietly(Buffer buffer) {
+        try {
+            buffer.close();
+        } catch (Exception e) {
+            log.warn("Error release buffer {}", buffer, e);
+        }
+    }
+
+    private static void fillParallel(ByteBuffer window, long first, int count, int elementSize,
+            WindowFiller filler) {
+        var chunks = (count + FILL_CHUNK_SIZE - 1) / FILL_CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            var start = c * FILL_CHUNK_SIZE;
+            var n = Math.min(FILL_CHUNK_SIZE, count - start);
+            var chunk = window.duplicate().position(start * elementSize).limit((start + n) * elementSize)
+                    .slice().order(window.order());
+            filler.fill(chunk, first + start, n);
+        });
+    }
+
     // #################################
     // Native buffers
     // #################################
@@ -180,7 +585,7 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
     public Buffer(@Assisted Supplier<cl_context> context, @Assisted Supplier<cl_command_queue> queue,
             @Assisted CharBuffer buffer, @Assisted("readOnly") boolean readOnly,
             @Assisted("useHostPtr") boolean useHostPtr) {
-        this(context, queue, buffer, Sizeof.cl_char, readOnly, useHostPtr);
+        this(context, queue, buffer, Sizeof.cl_short, readOnly, useHostPtr);
     }
 
     @AssistedInject
@@ -223,6 +628,8 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
             @Assisted java.nio.Buffer buffer, @Assisted long sizeType, @Assisted("readOnly") boolean readOnly,
             @Assisted("useHostPtr") boolean useHostPtr) {
         this.context = context.get();
+        this.parent = null;
+        this.origin = 0;
         this.mem = createBuffer(context.get(), queue.get(), readOnly, useHostPtr, sizeType, buffer);
         log.debug("Created buffer {}", this);
     }
@@ -265,11 +672,13 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
     }
 
     public void read(cl_command_queue queue, long offset, long size, Pointer dest) {
-        clEnqueueReadBuffer(queue, mem, CL_BLOCKING, offset, size, dest, 0, null, null);
+        var event = QueueProfiler.event(queue);
+        clEnqueueReadBuffer(queue, get(), CL_BLOCKING, offset, size, dest, 0, null, event);
+        QueueProfiler.recordOwned(queue, "read", event);
     }
 
     public void write(cl_command_queue queue, long offset, long size, java.nio.Buffer buffer) {
-        write(queue, mem, offset, size, Pointer.toBuffer(buffer));
+        write(queue, get(), offset, size, Pointer.toBuffer(buffer));
     }
 
     private void write(cl_command_queue queue, cl_mem mem, long offset, long size, java.nio.Buffer buffer) {
@@ -277,11 +686,547 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
     }
 
     public void write(cl_command_queue queue, long offset, long size, Pointer src) {
-        write(queue, mem, offset, size, src);
+        write(queue, get(), offset, size, src);
     }
 
     private void write(cl_command_queue queue, cl_mem mem, long offset, long size, Pointer src) {
-        clEnqueueWriteBuffer(queue, mem, CL_BLOCKING, offset, size, src, 0, null, null);
+        var event = QueueProfiler.event(queue);
+        clEnqueueWriteBuffer(queue, mem, CL_BLOCKING, offset, size, src, 0, null, event);
+        QueueProfiler.recordOwned(queue, "write", event);
+    }
+
+    // #################################
+    // Non-blocking
+    // #################################
+
+    /**
+     * Enqueues a non-blocking read into the specified direct buffer. The
+     * destination buffer is kept reachable until the read is completed.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param offset   the offset in bytes in this buffer.
+     * @param size     the size in bytes to read.
+     * @param dest     the direct {@link java.nio.Buffer} destination.
+     * @param waitList the {@link Event}s that must complete before the read.
+     * @return the {@link Event} of the read command.
+     */
+    public Event readAsync(cl_command_queue queue, long offset, long size, java.nio.Buffer dest,
+            Event... waitList) {
+        isTrue(dest.isDirect(), "Non-blocking read needs a direct buffer");
+        return enqueueRead(queue, offset, size, Pointer.toBuffer(dest), dest, waitList);
+    }
+
+    /**
+     * Enqueues a non-blocking read into the specified pointer. The pointer must
+     * point to native memory, for example to a direct buffer. The pointer is kept
+     * reachable until the read is completed.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param offset   the offset in bytes in this buffer.
+     * @param size     the size in bytes to read.
+     * @param dest     the {@link Pointer} destination.
+     * @param waitList the {@link Event}s that must complete before the read.
+     * @return the {@link Event} of the read command.
+     */
+    public Event readAsync(cl_command_queue queue, long offset, long size, Pointer dest, Event... waitList) {
+        return enqueueRead(queue, offset, size, dest, dest, waitList);
+    }
+
+    private Event enqueueRead(cl_command_queue queue, long offset, long size, Pointer dest, Object hostRef,
+            Event[] waitList) {
+        var event = new cl_event();
+        clEnqueueReadBuffer(queue, get(), CL_NON_BLOCKING, offset, size, dest, Event.waitListSize(waitList),
+                Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "read", event);
+        return new Event(event, hostRef);
+    }
+
+    /**
+     * Enqueues a non-blocking write from the specified direct buffer. The source
+     * buffer is kept reachable until the write is completed.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param offset   the offset in bytes in this buffer.
+     * @param size     the size in bytes to write.
+     * @param src      the direct {@link java.nio.Buffer} source.
+     * @param waitList the {@link Event}s that must complete before the write.
+     * @return the {@link Event} of the write command.
+     */
+    public Event writeAsync(cl_command_queue queue, long offset, long size, java.nio.Buffer src,
+            Event... waitList) {
+        isTrue(src.isDirect(), "Non-blocking write needs a direct buffer");
+        return enqueueWrite(queue, offset, size, Pointer.toBuffer(src), src, waitList);
+    }
+
+    /**
+     * Enqueues a non-blocking write from the specified pointer. The pointer must
+     * point to native memory, for example to a direct buffer. The pointer is kept
+     * reachable until the write is completed.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param offset   the offset in bytes in this buffer.
+     * @param size     the size in bytes to write.
+     * @param src      the {@link Pointer} source.
+     * @param waitList the {@link Event}s that must complete before the write.
+     * @return the {@link Event} of the write command.
+     */
+    public Event writeAsync(cl_command_queue queue, long offset, long size, Pointer src, Event... waitList) {
+        return enqueueWrite(queue, offset, size, src, src, waitList);
+    }
+
+    private Event enqueueWrite(cl_command_queue queue, long offset, long size, Pointer src, Object hostRef,
+            Event[] waitList) {
+        var event = new cl_event();
+        clEnqueueWriteBuffer(queue, get(), CL_NON_BLOCKING, offset, size, src, Event.waitListSize(waitList),
+                Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "write", event);
+        return new Event(event, hostRef);
+    }
+
+    // #################################
+    // Host segments
+    // #################################
+
+    /**
+     * Reads a region of the buffer into the host segment. Blocks until the
+     * region is read. The segment must not have mapped windows.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param offset     the offset in bytes in this buffer.
+     * @param size       the size in bytes to read, can be larger than 2 GiB.
+     * @param dest       the {@link HostSegment} destination.
+     * @param destOffset the offset in bytes in the segment.
+     */
+    public void read(cl_command_queue queue, long offset, long size, HostSegment dest, long destOffset) {
+        validState(dest.getOpenWindows() == 0, "Host segment has mapped windows");
+        copyTo(queue, dest.getBuffer(), offset, destOffset, size);
+    }
+
+    /**
+     * Writes a region of the host segment into the buffer. Blocks until the
+     * region is written. The segment must not have mapped windows.
+     *
+     * @param queue     the {@link cl_command_queue}.
+     * @param offset    the offset in bytes in this buffer.
+     * @param size      the size in bytes to write, can be larger than 2 GiB.
+     * @param src       the {@link HostSegment} source.
+     * @param srcOffset the offset in bytes in the segment.
+     */
+    public void write(cl_command_queue queue, long offset, long size, HostSegment src, long srcOffset) {
+        validState(src.getOpenWindows() == 0, "Host segment has mapped windows");
+        src.getBuffer().copyTo(queue, this, srcOffset, offset, size);
+    }
+
+    // #################################
+    // Device operations
+    // #################################
+
+    /**
+     * Fills a region of the buffer with the pattern on the device. Blocks until
+     * the region is filled.
+     *
+     * @param queue       the {@link cl_command_queue}.
+     * @param pattern     the {@link Pointer} to the pattern. The pattern is
+     *                    copied when the command is enqueued.
+     * @param patternSize the size in bytes of the pattern, one of 1, 2, 4, 8,
+     *                    16, 32, 64 or 128.
+     * @param offset      the offset in bytes of the region, a multiple of the
+     *                    pattern size.
+     * @param size        the size in bytes of the region, a multiple of the
+     *                    pattern size.
+     */
+    public void fill(cl_command_queue queue, Pointer pattern, long patternSize, long offset, long size) {
+        try (var event = fillAsync(queue, pattern, patternSize, offset, size)) {
+            event.waitFor();
+        }
+    }
+
+    /**
+     * Enqueues a fill of a region of the buffer with the pattern on the device.
+     *
+     * @param waitList the {@link Event}s that must complete before the fill.
+     * @return the {@link Event} of the fill command.
+     * @see #fill(cl_command_queue, Pointer, long, long, long)
+     */
+    public Event fillAsync(cl_command_queue queue, Pointer pattern, long patternSize, long offset, long size,
+            Event... waitList) {
+        var event = new cl_event();
+        clEnqueueFillBuffer(queue, get(), pattern, patternSize, offset, size, Event.waitListSize(waitList),
+                Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "fill", event);
+        return new Event(event);
+    }
+
+    public void fill(cl_command_queue queue, byte value, long offset, long size) {
+        fill(queue, Pointer.to(new byte[] { value }), Sizeof.cl_char, offset, size);
+    }
+
+    public void fill(cl_command_queue queue, int value, long offset, long size) {
+        fill(queue, Pointer.to(new int[] { value }), Sizeof.cl_int, offset, size);
+    }
+
+    public void fill(cl_command_queue queue, long value, long offset, long size) {
+        fill(queue, Pointer.to(new long[] { value }), Sizeof.cl_long, offset, size);
+    }
+
+    public void fill(cl_command_queue queue, float value, long offset, long size) {
+        fill(queue, Pointer.to(new float[] { value }), Sizeof.cl_float, offset, size);
+    }
+
+    public void fill(cl_command_queue queue, double value, long offset, long size) {
+        fill(queue, Pointer.to(new double[] { value }), Sizeof.cl_double, offset, size);
+    }
+
+    public Event fillAsync(cl_command_queue queue, byte value, long offset, long size, Event... waitList) {
+        return fillAsync(queue, Pointer.to(new byte[] { value }), Sizeof.cl_char, offset, size, waitList);
+    }
+
+    public Event fillAsync(cl_command_queue queue, int value, long offset, long size, Event... waitList) {
+        return fillAsync(queue, Pointer.to(new int[] { value }), Sizeof.cl_int, offset, size, waitList);
+    }
+
+    public Event fillAsync(cl_command_queue queue, long value, long offset, long size, Event... waitList) {
+        return fillAsync(queue, Pointer.to(new long[] { value }), Sizeof.cl_long, offset, size, waitList);
+    }
+
+    public Event fillAsync(cl_command_queue queue, float value, long offset, long size, Event... waitList) {
+        return fillAsync(queue, Pointer.to(new float[] { value }), Sizeof.cl_float, offset, size, waitList);
+    }
+
+    public Event fillAsync(cl_command_queue queue, double value, long offset, long size, Event... waitList) {
+        return fillAsync(queue, Pointer.to(new double[] { value }), Sizeof.cl_double, offset, size, waitList);
+    }
+
+    /**
+     * Copies a region of this buffer to the destination buffer on the device.
+     * Blocks until the region is copied.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param dest       the destination {@link Buffer}.
+     * @param srcOffset  the offset in bytes in this buffer.
+     * @param destOffset the offset in bytes in the destination buffer.
+     * @param size       the size in bytes to copy.
+     */
+    public void copyTo(cl_command_queue queue, Buffer dest, long srcOffset, long destOffset, long size) {
+        try (var event = copyToAsync(queue, dest, srcOffset, destOffset, size)) {
+            event.waitFor();
+        }
+    }
+
+    /**
+     * Enqueues a copy of a region of this buffer to the destination buffer on the
+     * device.
+     *
+     * @param waitList the {@link Event}s that must complete before the copy.
+     * @return the {@link Event} of the copy command.
+     * @see #copyTo(cl_command_queue, Buffer, long, long, long)
+     */
+    public Event copyToAsync(cl_command_queue queue, Buffer dest, long srcOffset, long destOffset, long size,
+            Event... waitList) {
+        var event = new cl_event();
+        clEnqueueCopyBuffer(queue, get(), dest.get(), srcOffset, destOffset, size, Event.waitListSize(waitList),
+                Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "copy", event);
+        return new Event(event);
+    }
+
+    // #################################
+    // Rectangular
+    // #################################
+
+    /**
+     * Reads a 2D or 3D rectangular region of the buffer. Blocks until the region
+     * is read.
+     *
+     * @param queue            the {@link cl_command_queue}.
+     * @param bufferOrigin     the origin in the buffer, the first element is in
+     *                         bytes and the others in rows and slices.
+     * @param hostOrigin       the origin in the host memory, the first element
+     *                         is in bytes and the others in rows and slices.
+     * @param region           the region to read, the first element is in bytes
+     *                         and the others in rows and slices.
+     * @param bufferRowPitch   the length in bytes of a row in the buffer or 0 to
+     *                         use <code>region[0]</code>.
+     * @param bufferSlicePitch the length in bytes of a slice in the buffer or 0
+     *                         to use <code>region[1] * bufferRowPitch</code>.
+     * @param hostRowPitch     the length in bytes of a row in the host memory or
+     *                         0 to use <code>region[0]</code>.
+     * @param hostSlicePitch   the length in bytes of a slice in the host memory
+     *                         or 0 to use <code>region[1] * hostRowPitch</code>.
+     * @param dest             the destination {@link Pointer}.
+     */
+    public void readRect(cl_command_queue queue, long[] bufferOrigin, long[] hostOrigin, long[] region,
+            long bufferRowPitch, long bufferSlicePitch, long hostRowPitch, long hostSlicePitch, Pointer dest) {
+        var event = QueueProfiler.event(queue);
+        clEnqueueReadBufferRect(queue, get(), CL_BLOCKING, bufferOrigin, hostOrigin, region, bufferRowPitch,
+                bufferSlicePitch, hostRowPitch, hostSlicePitch, dest, 0, null, event);
+        QueueProfiler.recordOwned(queue, "readRect", event);
+    }
+
+    /**
+     * Reads a 2D or 3D rectangular region of the buffer. Blocks until the region
+     * is read.
+     *
+     * @see #readRect(cl_command_queue, long[], long[], long[], long, long, long,
+     *      long, Pointer)
+     */
+    public void readRect(cl_command_queue queue, long[] bufferOrigin, long[] hostOrigin, long[] region,
+            long bufferRowPitch, long bufferSlicePitch, long hostRowPitch, long hostSlicePitch,
+            java.nio.Buffer dest) {
+        readRect(queue, bufferOrigin, hostOrigin, region, bufferRowPitch, bufferSlicePitch, hostRowPitch,
+                hostSlicePitch, Pointer.toBuffer(dest));
+    }
+
+    /**
+     * Enqueues a non-blocking read of a 2D or 3D rectangular region of the
+     * buffer. The destination buffer is kept reachable until the read is
+     * completed.
+     *
+     * @param dest     the direct {@link java.nio.Buffer} destination.
+     * @param waitList the {@link Event}s that must complete before the read.
+     * @return the {@link Event} of the read command.
+     * @see #readRect(cl_command_queue, long[], long[], long[], long, long, long,
+     *      long, Pointer)
+     */
+    public Event readRectAsync(cl_command_queue queue, long[] bufferOrigin, long[] hostOrigin, long[] region,
+            long bufferRowPitch, long bufferSlicePitch, long hostRowPitch, long hostSlicePitch,
+            java.nio.Buffer dest, Event... waitList) {
+        isTrue(dest.isDirect(), "Non-blocking read needs a direct buffer");
+        var event = new cl_event();
+        clEnqueueReadBufferRect(queue, get(), CL_NON_BLOCKING, bufferOrigin, hostOrigin, region, bufferRowPitch,
+                bufferSlicePitch, hostRowPitch, hostSlicePitch, Pointer.toBuffer(dest), Event.waitListSize(waitList),
+                Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "readRect", event);
+        return new Event(event, dest);
+    }
+
+    /**
+     * Writes a 2D or 3D rectangular region of the buffer. Blocks until the
+     * region is written.
+     *
+     * @param src the source {@link Pointer}.
+     * @see #readRect(cl_command_queue, long[], long[], long[], long, long, long,
+     *      long, Pointer)
+     */
+    public void writeRect(cl_command_queue queue, long[] bufferOrigin, long[] hostOrigin, long[] region,
+            long bufferRowPitch, long bufferSlicePitch, long hostRowPitch, long hostSlicePitch, Pointer src) {
+        var event = QueueProfiler.event(queue);
+        clEnqueueWriteBufferRect(queue, get(), CL_BLOCKING, bufferOrigin, hostOrigin, region, bufferRowPitch,
+                bufferSlicePitch, hostRowPitch, hostSlicePitch, src, 0, null, event);
+        QueueProfiler.recordOwned(queue, "writeRect", event);
+    }
+
+    /**
+     * Writes a 2D or 3D rectangular region of the buffer. Blocks until the
+     * region is written.
+     *
+     * @see #readRect(cl_command_queue, long[], long[], long[], long, long, long,
+     *      long, Pointer)
+     */
+    public void writeRect(cl_command_queue queue, long[] bufferOrigin, long[] hostOrigin, long[] region,
+            long bufferRowPitch, long bufferSlicePitch, long hostRowPitch, long hostSlicePitch,
+            java.nio.Buffer src) {
+        writeRect(queue, bufferOrigin, hostOrigin, region, bufferRowPitch, bufferSlicePitch, hostRowPitch,
+                hostSlicePitch, Pointer.toBuffer(src));
+    }
+
+    /**
+     * Enqueues a non-blocking write of a 2D or 3D rectangular region of the
+     * buffer. The source buffer is kept reachable until the write is completed.
+     *
+     * @param src      the direct {@link java.nio.Buffer} source.
+     * @param waitList the {@link Event}s that must complete before the write.
+     * @return the {@link Event} of the write command.
+     * @see #readRect(cl_command_queue, long[], long[], long[], long, long, long,
+     *      long, Pointer)
+     */
+    public Event writeRectAsync(cl_command_queue queue, long[] bufferOrigin, long[] hostOrigin, long[] region,
+            long bufferRowPitch, long bufferSlicePitch, long hostRowPitch, long hostSlicePitch,
+            java.nio.Buffer src, Event... waitList) {
+        isTrue(src.isDirect(), "Non-blocking write needs a direct buffer");
+        var event = new cl_event();
+        clEnqueueWriteBufferRect(queue, get(), CL_NON_BLOCKING, bufferOrigin, hostOrigin, region, bufferRowPitch,
+                bufferSlicePitch, hostRowPitch, hostSlicePitch, Pointer.toBuffer(src), Event.waitListSize(waitList),
+                Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "writeRect", event);
+        return new Event(event, src);
+    }
+
+    /**
+     * Copies a 2D or 3D rectangular region of this buffer to the destination
+     * buffer on the device. Blocks until the region is copied.
+     *
+     * @param queue          the {@link cl_command_queue}.
+     * @param dest           the destination {@link Buffer}.
+     * @param srcOrigin      the origin in this buffer, the first element is in
+     *                       bytes and the others in rows and slices.
+     * @param destOrigin     the origin in the destination buffer, the first
+     *                       element is in bytes and the others in rows and
+     *                       slices.
+     * @param region         the region to copy, the first element is in bytes
+     *                       and the others in rows and slices.
+     * @param srcRowPitch    the length in bytes of a row in this buffer or 0 to
+     *                       use <code>region[0]</code>.
+     * @param srcSlicePitch  the length in bytes of a slice in this buffer or 0
+     *                       to use <code>region[1] * srcRowPitch</code>.
+     * @param destRowPitch   the length in bytes of a row in the destination
+     *                       buffer or 0 to use <code>region[0]</code>.
+     * @param destSlicePitch the length in bytes of a slice in the destination
+     *                       buffer or 0 to use
+     *                       <code>region[1] * destRowPitch</code>.
+     */
+    public void copyRect(cl_command_queue queue, Buffer dest, long[] srcOrigin, long[] destOrigin, long[] region,
+            long srcRowPitch, long srcSlicePitch, long destRowPitch, long destSlicePitch) {
+        try (var event = copyRectAsync(queue, dest, srcOrigin, destOrigin, region, srcRowPitch, srcSlicePitch,
+                destRowPitch, destSlicePitch)) {
+            event.waitFor();
+        }
+    }
+
+    /**
+     * Enqueues a copy of a 2D or 3D rectangular region of this buffer to the
+     * destination buffer on the device.
+     *
+     * @param waitList the {@link Event}s that must complete before the copy.
+     * @return the {@link Event} of the copy command.
+     * @see #copyRect(cl_command_queue, Buffer, long[], long[], long[], long,
+     *      long, long, long)
+     */
+    public Event copyRectAsync(cl_command_queue queue, Buffer dest, long[] srcOrigin, long[] destOrigin,
+            long[] region, long srcRowPitch, long srcSlicePitch, long destRowPitch, long destSlicePitch,
+            Event... waitList) {
+        var event = new cl_event();
+        clEnqueueCopyBufferRect(queue, get(), dest.get(), srcOrigin, destOrigin, region, srcRowPitch, srcSlicePitch,
+                destRowPitch, destSlicePitch, Event.waitListSize(waitList), Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "copyRect", event);
+        return new Event(event);
+    }
+
+    // #################################
+    // Mapping
+    // #################################
+
+    /**
+     * Creates a new buffer that is allocated in host accessible memory with the
+     * {@link org.jocl.CL#CL_MEM_ALLOC_HOST_PTR} flag. On integrated GPUs and CPU
+     * devices such a buffer can be mapped without a copy.
+     *
+     * @param bufferFactory the {@link BufferFactory}.
+     * @param context       the {@link Supplier} that supplies the
+     *                      {@link cl_context}.
+     * @param flags         the additional buffer flags.
+     * @param size          the size of the buffer.
+     */
+    public static Supplier<cl_mem> allocHostPtr(BufferFactory bufferFactory, Supplier<cl_context> context,
+            long flags, long size) {
+        return bufferFactory.create(context, flags | CL_MEM_ALLOC_HOST_PTR, size);
+    }
+
+    /**
+     * Maps the whole buffer into the host memory.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param mapFlags the map flags, for example
+     *                 {@link org.jocl.CL#CL_MAP_READ}.
+     * @return the {@link MappedBuffer} that unmaps the region on close.
+     */
+    public MappedBuffer map(cl_command_queue queue, long mapFlags) {
+        return map(queue, mapFlags, 0, retrieveSize());
+    }
+
+    /**
+     * Maps a region of the buffer into the host memory. Blocks until the region
+     * is mapped.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param mapFlags the map flags, for example
+     *                 {@link org.jocl.CL#CL_MAP_READ}.
+     * @param offset   the offset in bytes of the region.
+     * @param size     the size in bytes of the region.
+     * @param waitList the {@link Event}s that must complete before the map.
+     * @return the {@link MappedBuffer} that unmaps the region on close.
+     */
+    public MappedBuffer map(cl_command_queue queue, long mapFlags, long offset, long size, Event... waitList) {
+        var m = get();
+        var event = QueueProfiler.event(queue);
+        var mapped = clEnqueueMapBuffer(queue, m, CL_BLOCKING, mapFlags, offset, size, Event.waitListSize(waitList),
+                Event.toWaitList(waitList), event, null);
+        QueueProfiler.recordOwned(queue, "map", event);
+        return new MappedBuffer(queue, m, mapped);
+    }
+
+    // #################################
+    // Sub-buffers
+    // #################################
+
+    /**
+     * Creates a sub-buffer of a region of this buffer without a copy. The
+     * returned {@link Buffer} can be used as any other buffer, for example as a
+     * kernel argument.
+     * <p>
+     * Slices of a slice are created from the root buffer. The root buffer is
+     * kept reachable as long as the slice is used and must not be returned to a
+     * pool before all of its slices are closed.
+     *
+     * @param offset the offset in bytes of the region. Must be aligned to
+     *               <code>CL_DEVICE_MEM_BASE_ADDR_ALIGN</code> of the devices
+     *               of the context.
+     * @param size   the size in bytes of the region.
+     * @param flags  the sub-buffer flags or 0 to inherit the flags of this
+     *               buffer.
+     * @return the sub-buffer.
+     */
+    public Buffer slice(long offset, long size, long flags) {
+        validState(get() != null, "Buffer is closed");
+        if (parent != null) {
+            isTrue(offset >= 0 && offset + size <= retrieveSize(), "Region %d+%d outside of the slice", offset, size);
+            return parent.slice(origin + offset, size, flags);
+        }
+        var align = retrieveMemBaseAddrAlign();
+        isTrue(offset % align == 0, "Offset %d is not aligned to %d bytes", offset, align);
+        isTrue(offset >= 0 && size > 0 && offset + size <= retrieveSize(), "Region %d+%d outside of the buffer",
+                offset, size);
+        var region = new cl_buffer_region(offset, size);
+        var sub = clCreateSubBuffer(get(), flags, CL_BUFFER_CREATE_TYPE_REGION, region, null);
+        openSlices.incrementAndGet();
+        return new Buffer(this, sub, offset);
+    }
+
+    /**
+     * Returns the largest base address alignment in bytes of the devices of the
+     * context.
+     */
+    public long retrieveMemBaseAddrAlign() {
+        if (memBaseAddrAlign == 0) {
+            var align = 1L;
+            for (var device : Context.retrieveDevices(context)) {
+                align = Math.max(align, Device.retrieveMemBaseAddrAlign(device));
+            }
+            memBaseAddrAlign = align;
+        }
+        return memBaseAddrAlign;
+    }
+
+    /**
+     * Returns the buffer of this slice or <code>null</code> if this buffer is
+     * not a slice.
+     */
+    public Buffer getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the offset in bytes of this slice in the parent buffer.
+     */
+    public long getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Returns the number of slices of this buffer that are not closed.
+     */
+    public int getOpenSlices() {
+        return openSlices.get();
     }
 
     public long retrieveSize() {
@@ -300,19 +1245,46 @@ public class Buffer implements HaveContext, Supplier<cl_mem>, AutoCloseable {
         return mem;
     }
 
+    /**
+     * Gives up the ownership of the memory object without releasing it.
+     *
+     * @return the {@link cl_mem} or <code>null</code> if the buffer was already
+     *         closed.
+     */
+    cl_mem detach() {
+        var m = mem;
+        mem = null;
+        return m;
+    }
+
+    /**
+     * Takes the ownership of the memory object, for example after the content
+     * of the buffer was restored into a new memory object.
+     */
+    void attach(cl_mem mem) {
+        this.mem = mem;
+    }
+
     @Override
     public void close() throws Exception {
         if (mem == null) {
             return;
         }
+        if (openSlices.get() > 0) {
+            log.debug("Buffer has open slices and is released after the slices {}", this);
+        }
         clReleaseMemObject(mem);
         log.trace("Buffer released {}", this);
         mem = null;
+        if (parent != null) {
+            parent.openSlices.decrementAndGet();
+        }
     }
 
     @Override
     public String toString() {
-        return new ToStringBuilder(this).append("context", context).append("id", mem).build();
+        return new ToStringBuilder(this).append("context", context).append("id", mem).append("origin", origin)
+                .build();
     }
 
 }
@@ -0,0 +1,173 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static org.apache.commons.lang3.Validate.isTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams files into a {@link Buffer} without copying the data to the heap.
+ * <p>
+ * The file is mapped in chunks with {@link FileChannel#map} and each mapped
+ * region is the direct source of a non-blocking write. Two writes are in
+ * flight at the same time, so the next chunk is mapped while the previous one
+ * is uploaded. The heap use does not depend on the size of the file.
+ *
+ * <pre>
+ * &#64;Inject
+ * BufferFileLoader loader
+ *
+ * def buffer = loader.load(context, queue, Paths.get("data.bin"), CL_MEM_READ_ONLY)
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class BufferFileLoader {
+
+    /**
+     * The default size of the mapped chunks, 64 MiB.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of writes that are in flight at the same time.
+     */
+    private static final int IN_FLIGHT = 2;
+
+    private final BufferFactory bufferFactory;
+
+    private int chunkSize;
+
+    @Inject
+    public BufferFileLoader(BufferFactory bufferFactory) {
+        this.bufferFactory = bufferFactory;
+        this.chunkSize = DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * Sets the size in bytes of the mapped chunks.
+     */
+    public void setChunkSize(int chunkSize) {
+        isTrue(chunkSize > 0, "Chunk size must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Creates a new buffer with the size of the file and streams the file into
+     * the buffer.
+     *
+     * @param context the {@link Supplier} that supplies the {@link cl_context}.
+     * @param queue   the {@link Supplier} that supplies the
+     *                {@link cl_command_queue}.
+     * @param path    the {@link Path} of the file.
+     * @param flags   the buffer flags.
+     * @return the {@link Supplier} that supplies the {@link cl_mem}.
+     */
+    public Supplier<cl_mem> load(Supplier<cl_context> context, Supplier<cl_command_queue> queue, Path path,
+            long flags) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            var buffer = (Buffer) bufferFactory.create(context, flags, size);
+            try {
+                load(queue.get(), buffer, 0, channel, 0, size);
+            } catch (IOException | RuntimeException e) {
+                closeBuffer(buffer);
+                throw e;
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Streams the whole file into the buffer.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param dest       the destination {@link Buffer}.
+     * @param destOffset the offset in bytes in the destination buffer.
+     * @param path       the {@link Path} of the file.
+     */
+    public void load(cl_command_queue queue, Buffer dest, long destOffset, Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            load(queue, dest, destOffset, channel, 0, channel.size());
+        }
+    }
+
+    /**
+     * Streams a region of the file into the buffer. Blocks until all chunks are
+     * written.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param dest       the destination {@link Buffer}.
+     * @param destOffset the offset in bytes in the destination buffer.
+     * @param channel    the {@link FileChannel} of the file.
+     * @param position   the position in bytes in the file.
+     * @param size       the size in bytes to stream.
+     */
+    public void load(cl_command_queue queue, Buffer dest, long destOffset, FileChannel channel, long position,
+            long size) throws IOException {
+        var inFlight = new ArrayDeque<Event>(IN_FLIGHT);
+        try {
+            for (long done = 0; done < size;) {
+                if (inFlight.size() == IN_FLIGHT) {
+                    finish(inFlight.poll());
+                }
+                var length = (int) Math.min(chunkSize, size - done);
+                var region = channel.map(READ_ONLY, position + done, length);
+                inFlight.add(dest.writeAsync(queue, destOffset + done, length, region));
+                done += length;
+            }
+        } finally {
+            while (!inFlight.isEmpty()) {
+                finish(inFlight.poll());
+            }
+        }
+        log.debug("Loaded {} bytes into {}", size, dest);
+    }
+
+    private void finish(Event event) {
+        try (event) {
+            event.waitFor();
+        }
+    }
+
+    private void closeBuffer(Buffer buffer) {
+        try {
+            buffer.close();
+        } catch (Exception e) {
+            log.warn("Error release buffer {}", buffer, e);
+        }
+    }
+}
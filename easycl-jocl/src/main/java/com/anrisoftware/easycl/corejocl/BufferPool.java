@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.jocl.CL.clCreateBuffer;
+import static org.jocl.CL.clReleaseMemObject;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Free lists of {@link cl_mem} objects of one {@link cl_context}, organized by
+ * the buffer flags and size classes.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+class BufferPool {
+
+    /**
+     * The smallest size class in bytes.
+     */
+    static final long MIN_SIZE_CLASS = 256;
+
+    /**
+     * Returns the size class for the requested size. Each power of two is
+     * divided into four size classes, so at most a quarter of the allocation is
+     * wasted.
+     */
+    static long sizeClass(long size) {
+        if (size <= MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+        var power = Long.highestOneBit(size);
+        var step = power / 4;
+        return (size + step - 1) / step * step;
+    }
+
+    private final cl_context context;
+
+    private final Map<Long, Map<Long, Deque<cl_mem>>> free;
+
+    private long idleBytes;
+
+    private long idleBuffers;
+
+    private long hits;
+
+    private long misses;
+
+    private long released;
+
+    private boolean closed;
+
+    BufferPool(cl_context context) {
+        this.context = context;
+        this.free = new HashMap<>();
+    }
+
+    /**
+     * Returns a free memory object of the size class or creates a new one.
+     */
+    synchronized cl_mem acquire(long flags, long sizeClass) {
+        var list = free.computeIfAbsent(flags, f -> new HashMap<>()).get(sizeClass);
+        if (list != null && !list.isEmpty()) {
+            idleBytes -= sizeClass;
+            idleBuffers--;
+            hits++;
+            return list.pop();
+        }
+        misses++;
+        return clCreateBuffer(context, flags, sizeClass, null, null);
+    }
+
+    /**
+     * Puts the memory object back to the free list. If the idle memory would
+     * exceed the high-water mark or if the pool is closed then the memory
+     * object is released instead.
+     */
+    synchronized void release(long flags, long sizeClass, cl_mem mem, long highWaterMark) {
+        if (closed || idleBytes + sizeClass > highWaterMark) {
+            clReleaseMemObject(mem);
+            released++;
+            return;
+        }
+        free.computeIfAbsent(flags, f -> new HashMap<>()).computeIfAbsent(sizeClass, s -> new ArrayDeque<>())
+                .push(mem);
+        idleBytes += sizeClass;
+        idleBuffers++;
+    }
+
+    /**
+     * Releases idle memory objects, the largest size classes first, until the
+     * idle memory is not larger than the specified size.
+     */
+    synchronized void trim(long maxIdleBytes) {
+        while (idleBytes > maxIdleBytes) {
+            var largest = 0L;
+            Deque<cl_mem> largestList = null;
+            for (var lists : free.values()) {
+                for (var entry : lists.entrySet()) {
+                    if (!entry.getValue().isEmpty() && entry.getKey() > largest) {
+                        largest = entry.getKey();
+                        largestList = entry.getValue();
+                    }
+                }
+            }
+            if (largestList == null) {
+                break;
+            }
+            clReleaseMemObject(largestList.pop());
+            idleBytes -= largest;
+            idleBuffers--;
+            released++;
+        }
+        for (Iterator<Map<Long, Deque<cl_mem>>> it = free.values().iterator(); it.hasNext();) {
+            var lists = it.next();
+            lists.values().removeIf(Deque::isEmpty);
+            if (lists.isEmpty()) {
+                it.remove();
+            }
+        }
+        log.debug("Trimmed buffer pool {}", this);
+    }
+
+    /**
+     * Releases all idle memory objects. Memory objects of buffers that are still
+     * in use are released when the buffers are closed.
+     */
+    synchronized void close() {
+        closed = true;
+        trim(0);
+    }
+
+    synchronized BufferPoolStatistics getStatistics() {
+        return new BufferPoolStatistics(hits, misses, released, idleBuffers, idleBytes);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return new ToStringBuilder(this).append("context", context).append("idleBytes", idleBytes)
+                .append("idleBuffers", idleBuffers).append("hits", hits).append("misses", misses)
+                .append("released", released).build();
+    }
+}
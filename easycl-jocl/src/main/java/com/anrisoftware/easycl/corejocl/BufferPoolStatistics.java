@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import lombok.Data;
+
+/**
+ * Snapshot of the statistics of the {@link PooledBufferFactory}.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Data
+public class BufferPoolStatistics {
+
+    /**
+     * Number of buffers that were taken from a free list.
+     */
+    public final long hits;
+
+    /**
+     * Number of buffers that had to be created by the driver.
+     */
+    public final long misses;
+
+    /**
+     * Number of buffers that were released to the driver.
+     */
+    public final long released;
+
+    /**
+     * Number of buffers in the free lists.
+     */
+    public final long idleBuffers;
+
+    /**
+     * Size in bytes of the buffers in the free lists.
+     */
+    public final long idleBytes;
+
+    public BufferPoolStatistics add(BufferPoolStatistics other) {
+        return new BufferPoolStatistics(hits + other.hits, misses + other.misses, released + other.released,
+                idleBuffers + other.idleBuffers, idleBytes + other.idleBytes);
+    }
+}
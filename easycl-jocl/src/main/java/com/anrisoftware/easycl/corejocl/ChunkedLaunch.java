@@ -0,0 +1,206 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.CLException;
+import org.jocl.cl_event;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Launches a kernel as a series of smaller launches that each cover a part of
+ * the global range. The range is split along the last dimension and each part
+ * is enqueued with its global work offset, so the kernel sees the same global
+ * ids as with a single launch. The last {@link EnqueueArgs} of the kernel are
+ * not changed.
+ * <p>
+ * Short launches do not trip the watchdog of a display GPU and let commands of
+ * other threads run between the parts. The size of the parts is either fixed
+ * or adapted after each part to the target time.
+ *
+ * <pre>
+ * kernel.chunked(new EnqueueArgs(queue.get(), NDRange.d1Range(count)))
+ *         .setTargetTime(Duration.ofMillis(10))
+ *         .setListener({ offset, global, nanos -&gt; progress(offset, global) })
+ *         .call()
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class ChunkedLaunch implements Callable<Void> {
+
+    /**
+     * Informed after each part of the launch is completed.
+     *
+     * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+     */
+    @FunctionalInterface
+    public interface ChunkListener {
+
+        /**
+         * @param offset the global work offset of the part.
+         * @param global the global work size of the part.
+         * @param nanos  the time in nanoseconds from the enqueue to the
+         *               completion of the part.
+         */
+        void chunkCompleted(NDRange offset, NDRange global, long nanos);
+    }
+
+    private final Kernel kernel;
+
+    private final EnqueueArgs args;
+
+    private final int dim;
+
+    private final long step;
+
+    private long chunkSize;
+
+    private long targetNanos;
+
+    private ChunkListener listener;
+
+    /**
+     * Creates the launch of the kernel with the arguments.
+     *
+     * @param kernel the {@link Kernel}.
+     * @param args   the {@link EnqueueArgs} of the whole launch.
+     */
+    public ChunkedLaunch(Kernel kernel, EnqueueArgs args) {
+        isTrue(args.global.dims > 0, "Global range is empty");
+        this.kernel = kernel;
+        this.args = args;
+        this.dim = args.global.dims - 1;
+        this.step = args.local.dims != 0 ? args.local.sizes[dim] : 1;
+        this.chunkSize = args.global.sizes[dim];
+        this.targetNanos = 0;
+    }
+
+    /**
+     * Sets the size of each part along the last dimension. The size is rounded
+     * up to a multiple of the local size.
+     */
+    public ChunkedLaunch setChunkSize(long chunkSize) {
+        isTrue(chunkSize > 0, "Invalid chunk size %d", chunkSize);
+        this.chunkSize = NDRange.roundUp(chunkSize, step);
+        return this;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the target time of each part. The first part has the chunk size and
+     * the size of the next parts is scaled by the ratio of the target time and
+     * the time of the last part. Each part is waited for before the next part
+     * is enqueued.
+     */
+    public ChunkedLaunch setTargetTime(Duration targetTime) {
+        isTrue(!targetTime.isNegative() && !targetTime.isZero(), "Invalid target time %s", targetTime);
+        this.targetNanos = targetTime.toNanos();
+        if (chunkSize == args.global.sizes[dim]) {
+            chunkSize = NDRange.roundUp(Math.max(1, chunkSize / 64), step);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the listener that is informed after each part is completed. Each
+     * part is waited for before the next part is enqueued.
+     */
+    public ChunkedLaunch setListener(ChunkListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Enqueues all parts. Returns after the last part is enqueued, or after the
+     * last part is completed if a target time or a listener is set.
+     *
+     * @return the number of parts.
+     */
+    public int launch() throws CLException {
+        var global = args.global;
+        long start = args.offset.dims != 0 ? args.offset.sizes[dim] : 0;
+        long end = start + global.sizes[dim];
+        boolean wait = targetNanos > 0 || listener != null;
+        long size = chunkSize;
+        int chunks = 0;
+        for (long pos = start; pos < end; chunks++) {
+            long count = Math.min(size, end - pos);
+            var offset = chunkRange(args.offset.dims != 0 ? args.offset.sizes : new long[3], pos);
+            var range = chunkRange(global.sizes, count);
+            var chunk = args.withRange(offset, range);
+            if (chunks > 0) {
+                chunk = chunk.withWaitList();
+            }
+            pos += count;
+            if (!wait) {
+                kernel.enqueueKernel(chunk, null);
+                continue;
+            }
+            long time = System.nanoTime();
+            var launched = new cl_event();
+            kernel.enqueueKernel(chunk, launched);
+            try (var event = new Event(launched)) {
+                event.waitFor();
+            }
+            time = System.nanoTime() - time;
+            if (listener != null) {
+                listener.chunkCompleted(offset, range, time);
+            }
+            if (targetNanos > 0) {
+                size = nextSize(count, time);
+            }
+        }
+        log.trace("Launched {} in {} chunks", kernel, chunks);
+        return chunks;
+    }
+
+    private NDRange chunkRange(long[] sizes, long value) {
+        var s = new long[] { 1, 1, 1 };
+        System.arraycopy(sizes, 0, s, 0, args.global.dims);
+        s[dim] = value;
+        return new NDRange(args.global.dims, s);
+    }
+
+    private long nextSize(long size, long nanos) {
+        double scale = (double) targetNanos / Math.max(1, nanos);
+        scale = Math.max(0.5, Math.min(2.0, scale));
+        long next = (long) (size * scale) / step * step;
+        return Math.max(step, next);
+    }
+
+    @Override
+    public Void call() throws CLException {
+        launch();
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("kernel", kernel).append("chunkSize", chunkSize)
+                .append("targetNanos", targetNanos).build();
+    }
+}
@@ -15,13 +15,13 @@
  */
 package com.anrisoftware.easycl.corejocl;
 
+import static org.jocl.CL.CL_QUEUE_PROFILING_ENABLE;
+import static org.jocl.CL.CL_QUEUE_PROPERTIES;
 import static org.jocl.CL.clCreateCommandQueueWithProperties;
 import static org.jocl.CL.clReleaseCommandQueue;
 
 import java.util.function.Supplier;
 
-import javax.inject.Inject;
-
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.jocl.cl_command_queue;
 import org.jocl.cl_context;
@@ -29,6 +29,7 @@ import org.jocl.cl_device_id;
 import org.jocl.cl_queue_properties;
 
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -46,17 +47,50 @@ public class CommandQueue implements Supplier<cl_command_queue>, AutoCloseable {
 
     private cl_command_queue queue;
 
-    @Inject
+    private QueueProfiler profiler;
+
+    @AssistedInject
     public CommandQueue(@Assisted Supplier<cl_context> context, @Assisted Supplier<cl_device_id> device) {
-        createQueue(context.get(), device.get());
+        this(context, device, false);
     }
 
-    private void createQueue(cl_context context, cl_device_id device) {
+    /**
+     * Creates the queue with profiling enabled or disabled.
+     *
+     * @param context   the {@link Supplier} that returns the {@link cl_context}.
+     * @param device    the {@link Supplier} that returns the {@link cl_device_id}.
+     * @param profiling set to <code>true</code> to enable
+     *                  {@link org.jocl.CL#CL_QUEUE_PROFILING_ENABLE} and record
+     *                  the latencies of the commands in the
+     *                  {@link QueueProfiler}.
+     */
+    @AssistedInject
+    public CommandQueue(@Assisted Supplier<cl_context> context, @Assisted Supplier<cl_device_id> device,
+            @Assisted("profiling") boolean profiling) {
+        createQueue(context.get(), device.get(), profiling);
+    }
+
+    private void createQueue(cl_context context, cl_device_id device, boolean profiling) {
         var properties = new cl_queue_properties();
+        if (profiling) {
+            properties.addProperty(CL_QUEUE_PROPERTIES, CL_QUEUE_PROFILING_ENABLE);
+        }
         this.queue = clCreateCommandQueueWithProperties(context, device, properties, null);
+        if (profiling) {
+            this.profiler = new QueueProfiler(queue);
+            profiler.register();
+        }
         log.debug("Created command queue {}", this);
     }
 
+    /**
+     * Returns the {@link QueueProfiler} or <code>null</code> if the queue was
+     * created without profiling.
+     */
+    public QueueProfiler getProfiler() {
+        return profiler;
+    }
+
     @Override
     public cl_command_queue get() {
         return queue;
@@ -67,6 +101,9 @@ public class CommandQueue implements Supplier<cl_command_queue>, AutoCloseable {
         if (queue == null) {
             return;
         }
+        if (profiler != null) {
+            profiler.unregister();
+        }
         clReleaseCommandQueue(queue);
         log.trace("Command queue released {}", this);
         queue = null;
@@ -74,6 +111,6 @@ public class CommandQueue implements Supplier<cl_command_queue>, AutoCloseable {
 
     @Override
     public String toString() {
-        return new ToStringBuilder(this).append("id", queue).build();
+        return new ToStringBuilder(this).append("id", queue).append("profiling", profiler != null).build();
     }
 }
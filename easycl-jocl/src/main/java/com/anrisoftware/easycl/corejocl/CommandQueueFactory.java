@@ -21,6 +21,8 @@ import org.jocl.cl_command_queue;
 import org.jocl.cl_context;
 import org.jocl.cl_device_id;
 
+import com.google.inject.assistedinject.Assisted;
+
 /**
  * Factory to create a new {@link Supplier} that supplies a
  * {@link cl_command_queue} for the specified platform and device.
@@ -36,4 +38,16 @@ public interface CommandQueueFactory {
      * @param device  the {@link Supplier} that returns the {@link cl_device_id}.
      */
     Supplier<cl_command_queue> create(Supplier<cl_context> context, Supplier<cl_device_id> device);
+
+    /**
+     * Creates a new {@link Supplier} that supplies a {@link cl_command_queue}
+     * with profiling enabled or disabled.
+     *
+     * @param context   the {@link Supplier} that returns the {@link cl_context}.
+     * @param device    the {@link Supplier} that returns the {@link cl_device_id}.
+     * @param profiling set to <code>true</code> to record the latencies of the
+     *                  commands in the {@link QueueProfiler}.
+     */
+    Supplier<cl_command_queue> create(Supplier<cl_context> context, Supplier<cl_device_id> device,
+            @Assisted("profiling") boolean profiling);
 }
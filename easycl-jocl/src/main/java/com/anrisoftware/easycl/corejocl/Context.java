@@ -15,8 +15,10 @@
  */
 package com.anrisoftware.easycl.corejocl;
 
+import static org.jocl.CL.CL_CONTEXT_DEVICES;
 import static org.jocl.CL.CL_CONTEXT_PLATFORM;
 import static org.jocl.CL.clCreateContext;
+import static org.jocl.CL.clGetContextInfo;
 import static org.jocl.CL.clReleaseContext;
 
 import java.util.function.Supplier;
@@ -24,6 +26,8 @@ import java.util.function.Supplier;
 import javax.inject.Inject;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
 import org.jocl.cl_context;
 import org.jocl.cl_context_properties;
 import org.jocl.cl_device_id;
@@ -58,6 +62,24 @@ public class Context implements Supplier<cl_context>, AutoCloseable {
         log.debug("Created context {}", this);
     }
 
+    /**
+     * Returns the devices of the context.
+     */
+    public cl_device_id[] retrieveDevices() {
+        return retrieveDevices(context);
+    }
+
+    /**
+     * Returns the devices of the specified context.
+     */
+    public static cl_device_id[] retrieveDevices(cl_context context) {
+        long[] size = { 0 };
+        clGetContextInfo(context, CL_CONTEXT_DEVICES, 0, null, size);
+        var devices = new cl_device_id[(int) (size[0] / Sizeof.cl_device_id)];
+        clGetContextInfo(context, CL_CONTEXT_DEVICES, size[0], Pointer.to(devices), null);
+        return devices;
+    }
+
     @Override
     public cl_context get() {
         return context;
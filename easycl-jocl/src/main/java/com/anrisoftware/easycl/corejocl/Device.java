@@ -15,19 +15,29 @@
  */
 package com.anrisoftware.easycl.corejocl;
 
+import static org.jocl.CL.CL_DEVICE_GLOBAL_MEM_SIZE;
+import static org.jocl.CL.CL_DEVICE_LOCAL_MEM_SIZE;
+import static org.jocl.CL.CL_DEVICE_MAX_WORK_GROUP_SIZE;
+import static org.jocl.CL.CL_DEVICE_MEM_BASE_ADDR_ALIGN;
+import static org.jocl.CL.CL_DEVICE_NAME;
+import static org.jocl.CL.CL_DEVICE_SVM_CAPABILITIES;
 import static org.jocl.CL.CL_DEVICE_TYPE_GPU;
+import static org.jocl.CL.CL_DRIVER_VERSION;
 import static org.jocl.CL.clGetDeviceIDs;
+import static org.jocl.CL.clGetDeviceInfo;
 import static org.jocl.CL.clReleaseDevice;
 
+import java.nio.charset.StandardCharsets;
 import java.util.function.Supplier;
 
-import javax.inject.Inject;
-
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
 import org.jocl.cl_device_id;
 import org.jocl.cl_platform_id;
 
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -41,19 +51,35 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class Device implements Supplier<cl_device_id>, AutoCloseable {
 
-    private final long deviceType = CL_DEVICE_TYPE_GPU;
+    private final long deviceType;
 
     private final int deviceIndex = 0;
 
     private cl_device_id device;
 
     /**
-     * Obtains a {@link cl_device_id} from the specified platform.
+     * Obtains a GPU {@link cl_device_id} from the specified platform.
      *
      * @param platform the {@link Supplier} that returns the {@link cl_platform_id}.
      */
-    @Inject
+    @AssistedInject
     public Device(@Assisted Supplier<cl_platform_id> platform) {
+        this(platform, CL_DEVICE_TYPE_GPU);
+    }
+
+    /**
+     * Obtains a {@link cl_device_id} of the device type from the specified
+     * platform.
+     *
+     * @param platform   the {@link Supplier} that returns the
+     *                   {@link cl_platform_id}.
+     * @param deviceType the device type, for example
+     *                   {@link org.jocl.CL#CL_DEVICE_TYPE_CPU} for a CPU
+     *                   runtime such as PoCL.
+     */
+    @AssistedInject
+    public Device(@Assisted Supplier<cl_platform_id> platform, @Assisted("deviceType") long deviceType) {
+        this.deviceType = deviceType;
         obtainDevice(platform.get());
     }
 
@@ -71,6 +97,120 @@ public class Device implements Supplier<cl_device_id>, AutoCloseable {
         log.debug("Obtained device {}", this);
     }
 
+    /**
+     * Returns the alignment in bytes of the base address of sub-buffers.
+     */
+    public long retrieveMemBaseAddrAlign() {
+        return retrieveMemBaseAddrAlign(device);
+    }
+
+    /**
+     * Returns the alignment in bytes of the base address of sub-buffers for the
+     * specified device.
+     */
+    public static long retrieveMemBaseAddrAlign(cl_device_id device) {
+        // The device reports the alignment in bits
+        return retrieveInt(device, CL_DEVICE_MEM_BASE_ADDR_ALIGN) / 8;
+    }
+
+    /**
+     * Returns the size in bytes of the global memory of the device.
+     */
+    public long retrieveGlobalMemSize() {
+        return retrieveGlobalMemSize(device);
+    }
+
+    /**
+     * Returns the size in bytes of the global memory of the specified device.
+     */
+    public static long retrieveGlobalMemSize(cl_device_id device) {
+        return retrieveLong(device, CL_DEVICE_GLOBAL_MEM_SIZE);
+    }
+
+    /**
+     * Returns the size in bytes of the local memory of a compute unit.
+     */
+    public long retrieveLocalMemSize() {
+        return retrieveLocalMemSize(device);
+    }
+
+    /**
+     * Returns the size in bytes of the local memory of a compute unit of the
+     * specified device.
+     */
+    public static long retrieveLocalMemSize(cl_device_id device) {
+        return retrieveLong(device, CL_DEVICE_LOCAL_MEM_SIZE);
+    }
+
+    /**
+     * Returns the shared virtual memory capabilities, a combination of
+     * {@link org.jocl.CL#CL_DEVICE_SVM_COARSE_GRAIN_BUFFER},
+     * {@link org.jocl.CL#CL_DEVICE_SVM_FINE_GRAIN_BUFFER},
+     * {@link org.jocl.CL#CL_DEVICE_SVM_FINE_GRAIN_SYSTEM} and
+     * {@link org.jocl.CL#CL_DEVICE_SVM_ATOMICS}. Devices before OpenCL 2.0
+     * report 0.
+     */
+    public long retrieveSvmCapabilities() {
+        return retrieveSvmCapabilities(device);
+    }
+
+    /**
+     * Returns the shared virtual memory capabilities for the specified device.
+     */
+    public static long retrieveSvmCapabilities(cl_device_id device) {
+        return retrieveLong(device, CL_DEVICE_SVM_CAPABILITIES);
+    }
+
+    public String retrieveName() {
+        return retrieveName(device);
+    }
+
+    public static String retrieveName(cl_device_id device) {
+        return retrieveString(device, CL_DEVICE_NAME);
+    }
+
+    public String retrieveDriverVersion() {
+        return retrieveDriverVersion(device);
+    }
+
+    public static String retrieveDriverVersion(cl_device_id device) {
+        return retrieveString(device, CL_DRIVER_VERSION);
+    }
+
+    /**
+     * Returns the maximum number of work-items in a work-group.
+     */
+    public long retrieveMaxWorkGroupSize() {
+        return retrieveMaxWorkGroupSize(device);
+    }
+
+    public static long retrieveMaxWorkGroupSize(cl_device_id device) {
+        long[] value = { 0 };
+        clGetDeviceInfo(device, CL_DEVICE_MAX_WORK_GROUP_SIZE, Sizeof.size_t, Pointer.to(value), null);
+        return value[0];
+    }
+
+    static String retrieveString(cl_device_id device, int param) {
+        long[] size = { 0 };
+        clGetDeviceInfo(device, param, 0, null, size);
+        var buffer = new byte[(int) size[0]];
+        clGetDeviceInfo(device, param, size[0], Pointer.to(buffer), null);
+        // Strip the terminating zero
+        return new String(buffer, 0, Math.max(0, buffer.length - 1), StandardCharsets.US_ASCII);
+    }
+
+    static int retrieveInt(cl_device_id device, int param) {
+        int[] value = { 0 };
+        clGetDeviceInfo(device, param, Sizeof.cl_uint, Pointer.to(value), null);
+        return value[0];
+    }
+
+    static long retrieveLong(cl_device_id device, int param) {
+        long[] value = { 0 };
+        clGetDeviceInfo(device, param, Sizeof.cl_ulong, Pointer.to(value), null);
+        return value[0];
+    }
+
     @Override
     public cl_device_id get() {
         return device;
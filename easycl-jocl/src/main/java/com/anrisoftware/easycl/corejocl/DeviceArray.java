@@ -0,0 +1,155 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.Pointer;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_mem;
+
+/**
+ * Typed array of elements in a {@link Buffer}.
+ * <p>
+ * The array knows its element count and element size, so callers work with
+ * element indices instead of byte offsets. The {@link Pointer}s to the last
+ * used host array and to the scalar of {@code get}/{@code set} are cached,
+ * so repeated transfers with the same host array do not allocate. The cache
+ * keeps the last host array reachable. A device array is not thread-safe.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public abstract class DeviceArray implements Supplier<cl_mem>, AutoCloseable {
+
+    protected final Buffer buffer;
+
+    protected final cl_command_queue queue;
+
+    protected final long length;
+
+    protected final int elementSize;
+
+    private Object cachedArray;
+
+    private int cachedOffset;
+
+    private Pointer cachedPointer;
+
+    /**
+     * Wraps the buffer. The array takes the ownership of the buffer.
+     *
+     * @param buffer      the {@link Buffer} of the elements.
+     * @param queue       the {@link cl_command_queue} of the transfers.
+     * @param length      the number of elements.
+     * @param elementSize the size in bytes of one element.
+     */
+    protected DeviceArray(Buffer buffer, cl_command_queue queue, long length, int elementSize) {
+        this.buffer = buffer;
+        this.queue = queue;
+        this.length = length;
+        this.elementSize = elementSize;
+    }
+
+    /**
+     * Returns the {@link Pointer} to the host array.
+     */
+    protected abstract Pointer toPointer(Object array);
+
+    /**
+     * Returns the cached {@link Pointer} to the element of the host array at
+     * the offset.
+     */
+    protected final Pointer hostPointer(Object array, int offset) {
+        if (array != cachedArray || offset != cachedOffset) {
+            var p = toPointer(array);
+            cachedPointer = offset == 0 ? p : p.withByteOffset((long) offset * elementSize);
+            cachedArray = array;
+            cachedOffset = offset;
+        }
+        return cachedPointer;
+    }
+
+    /**
+     * Reads the elements <code>[from, to)</code> into the host array.
+     */
+    protected final void readRange(long from, long to, Object dest, int destOffset, int destLength) {
+        checkRange(from, to);
+        checkHost(destOffset, to - from, destLength);
+        buffer.read(queue, from * elementSize, (to - from) * elementSize, hostPointer(dest, destOffset));
+    }
+
+    /**
+     * Writes <code>count</code> elements from the host array starting at the
+     * element <code>from</code>.
+     */
+    protected final void writeRange(long from, Object src, int srcOffset, int count, int srcLength) {
+        checkRange(from, from + count);
+        checkHost(srcOffset, count, srcLength);
+        buffer.write(queue, from * elementSize, (long) count * elementSize, hostPointer(src, srcOffset));
+    }
+
+    protected final void checkIndex(long index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+    }
+
+    private void checkRange(long from, long to) {
+        if (from < 0 || from > to || to > length) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for length " + length);
+        }
+    }
+
+    private void checkHost(int offset, long count, int hostLength) {
+        if (offset < 0 || offset + count > hostLength) {
+            throw new IndexOutOfBoundsException(
+                    "Host range " + offset + "+" + count + " out of bounds for length " + hostLength);
+        }
+    }
+
+    public Buffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the number of elements.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public int getElementSize() {
+        return elementSize;
+    }
+
+    @Override
+    public cl_mem get() {
+        return buffer.get();
+    }
+
+    @Override
+    public void close() throws Exception {
+        cachedArray = null;
+        cachedPointer = null;
+        buffer.close();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("buffer", buffer).append("length", length).build();
+    }
+}
@@ -20,6 +20,8 @@ import java.util.function.Supplier;
 import org.jocl.cl_device_id;
 import org.jocl.cl_platform_id;
 
+import com.google.inject.assistedinject.Assisted;
+
 /**
  * Factory to create a new {@link Supplier} that supplies a {@link cl_device_id}
  * for the specified platform.
@@ -35,4 +37,14 @@ public interface DeviceFactory {
      * @param platform the {@link Supplier} that returns the {@link cl_platform_id}.
      */
     Supplier<cl_device_id> create(Supplier<cl_platform_id> platform);
+
+    /**
+     * Creates a new {@link Supplier} that supplies a {@link cl_device_id} of the
+     * device type for the specified platform.
+     *
+     * @param platform   the {@link Supplier} that returns the {@link cl_platform_id}.
+     * @param deviceType the device type, for example
+     *                   {@link org.jocl.CL#CL_DEVICE_TYPE_CPU}.
+     */
+    Supplier<cl_device_id> create(Supplier<cl_platform_id> platform, @Assisted("deviceType") long deviceType);
 }
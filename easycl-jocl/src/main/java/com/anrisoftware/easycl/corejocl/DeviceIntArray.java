@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import java.util.function.Supplier;
+
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+
+/**
+ * {@link DeviceArray} of <code>int</code> elements.
+ *
+ * <pre>
+ * def values = DeviceIntArray.create(bufferFactory, context, queue, CL_MEM_READ_WRITE, count)
+ * values.set(0, 1)
+ * int[] dest = new int[count]
+ * values.read(0, count, dest, 0)
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public class DeviceIntArray extends DeviceArray {
+
+    /**
+     * Creates a new array with uninitialized elements.
+     *
+     * @param bufferFactory the {@link BufferFactory}.
+     * @param context       the {@link Supplier} that supplies the
+     *                      {@link cl_context}.
+     * @param queue         the {@link Supplier} that supplies the
+     *                      {@link cl_command_queue} of the transfers.
+     * @param flags         the buffer flags.
+     * @param length        the number of elements.
+     */
+    public static DeviceIntArray create(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, long flags, long length) {
+        var buffer = (Buffer) bufferFactory.create(context, flags, Sizeof.cl_int * length);
+        return new DeviceIntArray(buffer, queue.get(), length);
+    }
+
+    private final int[] scalar;
+
+    private final Pointer scalarPointer;
+
+    public DeviceIntArray(Buffer buffer, cl_command_queue queue, long length) {
+        super(buffer, queue, length, Sizeof.cl_int);
+        this.scalar = new int[1];
+        this.scalarPointer = Pointer.to(scalar);
+    }
+
+    @Override
+    protected Pointer toPointer(Object array) {
+        return Pointer.to((int[]) array);
+    }
+
+    /**
+     * Reads the elements <code>[from, to)</code> into the destination starting
+     * at <code>destOffset</code>. Blocks until the elements are read.
+     */
+    public void read(long from, long to, int[] dest, int destOffset) {
+        readRange(from, to, dest, destOffset, dest.length);
+    }
+
+    /**
+     * Reads the first <code>dest.length</code> elements.
+     */
+    public void read(int[] dest) {
+        readRange(0, dest.length, dest, 0, dest.length);
+    }
+
+    /**
+     * Writes <code>count</code> elements of the source starting at
+     * <code>srcOffset</code> to the elements starting at <code>from</code>.
+     * Blocks until the elements are written.
+     */
+    public void write(long from, int[] src, int srcOffset, int count) {
+        writeRange(from, src, srcOffset, count, src.length);
+    }
+
+    /**
+     * Writes the source to the first <code>src.length</code> elements.
+     */
+    public void write(int[] src) {
+        writeRange(0, src, 0, src.length, src.length);
+    }
+
+    /**
+     * Reads the element at the index.
+     */
+    public int get(long index) {
+        checkIndex(index);
+        buffer.read(queue, index * elementSize, elementSize, scalarPointer);
+        return scalar[0];
+    }
+
+    /**
+     * Writes the element at the index.
+     */
+    public void set(long index, int value) {
+        checkIndex(index);
+        scalar[0] = value;
+        buffer.write(queue, index * elementSize, elementSize, scalarPointer);
+    }
+
+    /**
+     * Reads all elements into a new array.
+     */
+    public int[] toArray() {
+        var dest = new int[Math.toIntExact(length)];
+        read(dest);
+        return dest;
+    }
+}
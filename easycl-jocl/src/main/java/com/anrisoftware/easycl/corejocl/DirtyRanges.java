@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+import java.util.TreeMap;
+
+/**
+ * Sorted set of dirty byte ranges <code>[from, to)</code>.
+ * <p>
+ * Overlapping ranges and ranges that are at most the merge gap apart are
+ * coalesced into one range, so a transfer of a few unchanged bytes replaces
+ * the overhead of another command.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public class DirtyRanges {
+
+    /**
+     * Consumer of a range.
+     *
+     * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+     */
+    @FunctionalInterface
+    public interface RangeConsumer {
+
+        void accept(long from, long to);
+    }
+
+    private final TreeMap<Long, Long> ranges;
+
+    private long mergeGap;
+
+    /**
+     * @param mergeGap the largest gap in bytes between two ranges that are
+     *                 coalesced.
+     */
+    public DirtyRanges(long mergeGap) {
+        isTrue(mergeGap >= 0, "Merge gap must not be negative");
+        this.ranges = new TreeMap<>();
+        this.mergeGap = mergeGap;
+    }
+
+    public void setMergeGap(long mergeGap) {
+        isTrue(mergeGap >= 0, "Merge gap must not be negative");
+        this.mergeGap = mergeGap;
+    }
+
+    public long getMergeGap() {
+        return mergeGap;
+    }
+
+    /**
+     * Adds the range <code>[from, to)</code>.
+     */
+    public void add(long from, long to) {
+        isTrue(from >= 0 && from <= to, "Invalid range [%d, %d)", from, to);
+        if (from == to) {
+            return;
+        }
+        long lo = from;
+        long hi = to;
+        var floor = ranges.floorEntry(from);
+        if (floor != null && floor.getValue() + mergeGap >= from) {
+            lo = floor.getKey();
+            hi = Math.max(hi, floor.getValue());
+            ranges.remove(lo);
+        }
+        var next = ranges.ceilingEntry(lo);
+        while (next != null && next.getKey() <= hi + mergeGap) {
+            hi = Math.max(hi, next.getValue());
+            ranges.remove(next.getKey());
+            next = ranges.ceilingEntry(lo);
+        }
+        ranges.put(lo, hi);
+    }
+
+    /**
+     * Calls the consumer for each range in ascending order.
+     */
+    public void forEach(RangeConsumer consumer) {
+        for (var e : ranges.entrySet()) {
+            consumer.accept(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of ranges.
+     */
+    public int size() {
+        return ranges.size();
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * Returns the sum of the lengths in bytes of the ranges.
+     */
+    public long getLength() {
+        long length = 0;
+        for (var e : ranges.entrySet()) {
+            length += e.getValue() - e.getKey();
+        }
+        return length;
+    }
+
+    public void clear() {
+        ranges.clear();
+    }
+
+    @Override
+    public String toString() {
+        var s = new StringBuilder("[");
+        forEach((from, to) -> {
+            if (s.length() > 1) {
+                s.append(", ");
+            }
+            s.append('[').append(from).append(", ").append(to).append(')');
+        });
+        return s.append(']').toString();
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expression of element-wise operations over <code>float</code>
+ * {@link Buffer}s. The expression is evaluated by the {@link FusionEngine} in
+ * one kernel that reads each input element once and writes the result once.
+ * <p>
+ * Expressions with the same shape have the same {@link #getSignature()} and
+ * share the compiled kernel. The buffers and the constants are passed as
+ * kernel arguments, so different buffers and constants do not compile a new
+ * kernel.
+ *
+ * <pre>
+ * def x = ElementwiseExpr.input(a)
+ * def expr = x.mul(2f).add(ElementwiseExpr.input(b)).clamp(0f, 1f).tanh()
+ * fusionEngine.evaluate(queue.get(), expr, out, count)
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public final class ElementwiseExpr {
+
+    private enum Kind {
+        INPUT, CONSTANT, OPERATOR, FUNCTION
+    }
+
+    /**
+     * Returns the expression that reads the elements of the buffer.
+     */
+    public static ElementwiseExpr input(Buffer buffer) {
+        isTrue(buffer != null, "Input buffer is null");
+        return new ElementwiseExpr(Kind.INPUT, null, buffer, 0, List.of());
+    }
+
+    /**
+     * Returns the constant expression.
+     */
+    public static ElementwiseExpr constant(float value) {
+        return new ElementwiseExpr(Kind.CONSTANT, null, null, value, List.of());
+    }
+
+    private final Kind kind;
+
+    private final String op;
+
+    private final Buffer buffer;
+
+    private final float value;
+
+    private final List<ElementwiseExpr> operands;
+
+    private Layout layout;
+
+    private ElementwiseExpr(Kind kind, String op, Buffer buffer, float value, List<ElementwiseExpr> operands) {
+        this.kind = kind;
+        this.op = op;
+        this.buffer = buffer;
+        this.value = value;
+        this.operands = operands;
+    }
+
+    public ElementwiseExpr add(ElementwiseExpr e) {
+        return operator("+", e);
+    }
+
+    public ElementwiseExpr add(float v) {
+        return operator("+", constant(v));
+    }
+
+    public ElementwiseExpr sub(ElementwiseExpr e) {
+        return operator("-", e);
+    }
+
+    public ElementwiseExpr sub(float v) {
+        return operator("-", constant(v));
+    }
+
+    public ElementwiseExpr mul(ElementwiseExpr e) {
+        return operator("*", e);
+    }
+
+    public ElementwiseExpr mul(float v) {
+        return operator("*", constant(v));
+    }
+
+    public ElementwiseExpr div(ElementwiseExpr e) {
+        return operator("/", e);
+    }
+
+    public ElementwiseExpr div(float v) {
+        return operator("/", constant(v));
+    }
+
+    public ElementwiseExpr min(ElementwiseExpr e) {
+        return function("fmin", e);
+    }
+
+    public ElementwiseExpr min(float v) {
+        return function("fmin", constant(v));
+    }
+
+    public ElementwiseExpr max(ElementwiseExpr e) {
+        return function("fmax", e);
+    }
+
+    public ElementwiseExpr max(float v) {
+        return function("fmax", constant(v));
+    }
+
+    public ElementwiseExpr clamp(float min, float max) {
+        return function("clamp", constant(min), constant(max));
+    }
+
+    public ElementwiseExpr neg() {
+        return constant(0).sub(this);
+    }
+
+    public ElementwiseExpr abs() {
+        return function("fabs");
+    }
+
+    public ElementwiseExpr sqrt() {
+        return function("sqrt");
+    }
+
+    public ElementwiseExpr exp() {
+        return function("exp");
+    }
+
+    public ElementwiseExpr log() {
+        return function("log");
+    }
+
+    public ElementwiseExpr tanh() {
+        return function("tanh");
+    }
+
+    public ElementwiseExpr relu() {
+        return max(0f);
+    }
+
+    public ElementwiseExpr sigmoid() {
+        return constant(1).div(constant(1).add(neg().exp()));
+    }
+
+    /**
+     * Applies the OpenCL C built-in function. The expression is the first
+     * argument of the function.
+     *
+     * @param name the name of the function, for example <code>native_sin</code>.
+     * @param args the other arguments of the function.
+     */
+    public ElementwiseExpr function(String name, ElementwiseExpr... args) {
+        isTrue(name.matches("[A-Za-z_][A-Za-z0-9_]*"), "Invalid function name %s", name);
+        var list = new ArrayList<ElementwiseExpr>(args.length + 1);
+        list.add(this);
+        Collections.addAll(list, args);
+        return new ElementwiseExpr(Kind.FUNCTION, name, null, 0, List.copyOf(list));
+    }
+
+    private ElementwiseExpr operator(String op, ElementwiseExpr e) {
+        return new ElementwiseExpr(Kind.OPERATOR, op, null, 0, List.of(this, e));
+    }
+
+    /**
+     * Returns the expression in OpenCL C with the inputs named
+     * <code>in0, in1, ...</code> and the constants named
+     * <code>c0, c1, ...</code>. Expressions with the same signature share the
+     * compiled kernel.
+     */
+    public String getSignature() {
+        return layout().signature;
+    }
+
+    /**
+     * Returns the distinct input buffers in the order of the kernel arguments.
+     */
+    public List<Buffer> getInputs() {
+        return layout().inputs;
+    }
+
+    /**
+     * Returns the constants in the order of the kernel arguments.
+     */
+    public float[] getConstants() {
+        return layout().constants.clone();
+    }
+
+    /**
+     * Returns the source of the kernel that evaluates the expression. The
+     * arguments are the input buffers, the output buffer, the constants and the
+     * number of elements.
+     *
+     * @param name the name of the kernel function.
+     */
+    public String toSource(String name) {
+        var l = layout();
+        var s = new StringBuilder();
+        s.append("kernel void ").append(name).append('(');
+        for (int i = 0; i < l.inputs.size(); i++) {
+            s.append("global const float* in").append(i).append(", ");
+        }
+        s.append("global float* out, ");
+        for (int i = 0; i < l.constants.length; i++) {
+            s.append("float c").append(i).append(", ");
+        }
+        s.append("uint n) {\n");
+        s.append("    size_t i = get_global_id(0);\n");
+        s.append("    if (i < n) {\n");
+        s.append("        out[i] = ").append(l.signature).append(";\n");
+        s.append("    }\n");
+        s.append("}\n");
+        return s.toString();
+    }
+
+    private synchronized Layout layout() {
+        if (layout == null) {
+            layout = new Layout(this);
+        }
+        return layout;
+    }
+
+    @Override
+    public String toString() {
+        return getSignature();
+    }
+
+    /**
+     * Numbers the inputs and constants of the expression.
+     */
+    private static class Layout {
+
+        final String signature;
+
+        final List<Buffer> inputs;
+
+        final float[] constants;
+
+        private final Map<Buffer, Integer> inputIndex = new IdentityHashMap<>();
+
+        private final List<Float> constantList = new ArrayList<>();
+
+        Layout(ElementwiseExpr expr) {
+            var s = new StringBuilder();
+            var inputs = new ArrayList<Buffer>();
+            append(expr, s, inputs);
+            this.signature = s.toString();
+            this.inputs = List.copyOf(inputs);
+            this.constants = new float[constantList.size()];
+            for (int i = 0; i < constants.length; i++) {
+                constants[i] = constantList.get(i);
+            }
+        }
+
+        private void append(ElementwiseExpr e, StringBuilder s, List<Buffer> inputs) {
+            switch (e.kind) {
+            case INPUT:
+                var index = inputIndex.get(e.buffer);
+                if (index == null) {
+                    index = inputs.size();
+                    inputIndex.put(e.buffer, index);
+                    inputs.add(e.buffer);
+                }
+                s.append("in").append(index).append("[i]");
+                break;
+            case CONSTANT:
+                s.append('c').append(constantList.size());
+                constantList.add(e.value);
+                break;
+            case OPERATOR:
+                s.append('(');
+                append(e.operands.get(0), s, inputs);
+                s.append(' ').append(e.op).append(' ');
+                append(e.operands.get(1), s, inputs);
+                s.append(')');
+                break;
+            case FUNCTION:
+                s.append(e.op).append('(');
+                for (int i = 0; i < e.operands.size(); i++) {
+                    s.append(i == 0 ? "" : ", ");
+                    append(e.operands.get(i), s, inputs);
+                }
+                s.append(')');
+                break;
+            }
+        }
+    }
+}
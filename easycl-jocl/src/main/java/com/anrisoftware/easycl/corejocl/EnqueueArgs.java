@@ -15,6 +15,8 @@
  */
 package com.anrisoftware.easycl.corejocl;
 
+import static org.apache.commons.lang3.Validate.isTrue;
+
 import org.jocl.cl_command_queue;
 
 import lombok.EqualsAndHashCode;
@@ -42,11 +44,73 @@ public class EnqueueArgs {
 
     public final NDRange local;
 
+    /**
+     * The {@link Event}s that must complete before the launch.
+     */
+    public final Event[] waitList;
+
+    /**
+     * The real extent of a padded global range or <code>null</code>.
+     */
+    public final NDRange bounds;
+
+    /**
+     * The index of the first kernel argument that receives the
+     * {@link #bounds}, one argument for each dimension, or <code>-1</code>.
+     */
+    public final int boundsArg;
+
+    /**
+     * Returns the arguments with the global range rounded up to a multiple of
+     * the local range in each dimension. The kernel must check the work-item
+     * ids against the real extent.
+     *
+     * @param queue  the {@link cl_command_queue}.
+     * @param global the real extent.
+     * @param local  the local work size.
+     */
+    public static EnqueueArgs padded(cl_command_queue queue, NDRange global, NDRange local) {
+        return padded(queue, global, local, -1);
+    }
+
+    /**
+     * Returns the arguments with the global range rounded up to a multiple of
+     * the local range in each dimension. The real extent is set to the kernel
+     * arguments starting at the index before each launch, one
+     * <code>int</code> or <code>long</code> argument for each dimension.
+     *
+     * <pre>
+     * kernel void blur(global const float* in, global float* out, int width, int height) {
+     *     int x = get_global_id(0);
+     *     int y = get_global_id(1);
+     *     if (x &gt;= width || y &gt;= height) {
+     *         return;
+     *     }
+     *     ...
+     * }
+     *
+     * kernel.enqueue(EnqueueArgs.padded(queue, NDRange.d2Range(width, height), NDRange.d2Range(16, 16), 2)).call()
+     * </pre>
+     *
+     * @param queue     the {@link cl_command_queue}.
+     * @param global    the real extent.
+     * @param local     the local work size.
+     * @param boundsArg the index of the first argument that receives the real
+     *                  extent or <code>-1</code>.
+     */
+    public static EnqueueArgs padded(cl_command_queue queue, NDRange global, NDRange local, int boundsArg) {
+        isTrue(local.dims != 0, "Padding needs a local work size");
+        return new EnqueueArgs(queue, NDRange.d0Range(), global.roundUp(local), local, null, global, boundsArg);
+    }
+
     public EnqueueArgs(cl_command_queue queue, NDRange global) {
         this.queue = queue;
         this.global = global;
         this.offset = NDRange.d0Range();
         this.local = NDRange.d0Range();
+        this.waitList = null;
+        this.bounds = null;
+        this.boundsArg = -1;
     }
 
     public EnqueueArgs(cl_command_queue queue, NDRange global, NDRange local) {
@@ -54,6 +118,9 @@ public class EnqueueArgs {
         this.global = global;
         this.offset = NDRange.d0Range();
         this.local = local;
+        this.waitList = null;
+        this.bounds = null;
+        this.boundsArg = -1;
     }
 
     public EnqueueArgs(cl_command_queue queue, NDRange offset, NDRange global, NDRange local) {
@@ -61,5 +128,42 @@ public class EnqueueArgs {
         this.global = global;
         this.offset = offset;
         this.local = local;
+        this.waitList = null;
+        this.bounds = null;
+        this.boundsArg = -1;
+    }
+
+    public EnqueueArgs(cl_command_queue queue, NDRange offset, NDRange global, NDRange local, Event... waitList) {
+        this(queue, offset, global, local, waitList, null, -1);
+    }
+
+    private EnqueueArgs(cl_command_queue queue, NDRange offset, NDRange global, NDRange local, Event[] waitList,
+            NDRange bounds, int boundsArg) {
+        this.queue = queue;
+        this.global = global;
+        this.offset = offset;
+        this.local = local;
+        this.waitList = waitList;
+        this.bounds = bounds;
+        this.boundsArg = boundsArg;
+    }
+
+    /**
+     * Returns a copy of the arguments with the offset and the global range.
+     *
+     * @param offset the global work offset.
+     * @param global the global work size.
+     */
+    public EnqueueArgs withRange(NDRange offset, NDRange global) {
+        return new EnqueueArgs(queue, offset, global, local, waitList, bounds, boundsArg);
+    }
+
+    /**
+     * Returns a copy of the arguments with the wait list.
+     *
+     * @param waitList the {@link Event}s that must complete before the launch.
+     */
+    public EnqueueArgs withWaitList(Event... waitList) {
+        return new EnqueueArgs(queue, offset, global, local, waitList, bounds, boundsArg);
     }
 }
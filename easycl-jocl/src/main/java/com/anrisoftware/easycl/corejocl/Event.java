@@ -0,0 +1,192 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.jocl.CL.CL_COMPLETE;
+import static org.jocl.CL.CL_EVENT_COMMAND_EXECUTION_STATUS;
+import static org.jocl.CL.clGetEventInfo;
+import static org.jocl.CL.clReleaseEvent;
+import static org.jocl.CL.clSetEventCallback;
+import static org.jocl.CL.clWaitForEvents;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.CL;
+import org.jocl.CLException;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_event;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Wrapper around {@link cl_event} that is returned from non-blocking commands.
+ * <p>
+ * If the command reads from or writes to host memory then the host object is
+ * kept reachable until the command is completed, so the caller does not need
+ * to hold on to the host buffer while the transfer is running.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class Event implements Supplier<cl_event>, AutoCloseable {
+
+    /**
+     * Keeps the events with host references reachable until the command is
+     * completed.
+     */
+    private static final Set<Event> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Returns the {@link cl_event} wait list for the specified events.
+     *
+     * @param events the {@link Event}s to wait for.
+     * @return the {@link cl_event}s or <code>null</code> if the list is empty.
+     */
+    public static cl_event[] toWaitList(Event... events) {
+        if (events == null || events.length == 0) {
+            return null;
+        }
+        var list = new cl_event[events.length];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = events[i].get();
+        }
+        return list;
+    }
+
+    /**
+     * Returns the number of events in the wait list.
+     */
+    public static int waitListSize(Event... events) {
+        return events == null ? 0 : events.length;
+    }
+
+    /**
+     * Blocks until all of the specified events are completed.
+     */
+    public static void waitForAll(Event... events) {
+        var list = toWaitList(events);
+        if (list == null) {
+            return;
+        }
+        clWaitForEvents(list.length, list);
+    }
+
+    private final CompletableFuture<Void> future;
+
+    private cl_event event;
+
+    private volatile Object hostRef;
+
+    private boolean callbackSet;
+
+    /**
+     * Wraps the specified event.
+     *
+     * @param event the {@link cl_event}.
+     */
+    public Event(cl_event event) {
+        this(event, null);
+    }
+
+    /**
+     * Wraps the specified event and keeps the host object reachable until the
+     * command is completed.
+     *
+     * @param event   the {@link cl_event}.
+     * @param hostRef the host object that is used by the command or
+     *                <code>null</code>.
+     */
+    public Event(cl_event event, Object hostRef) {
+        this.event = event;
+        this.hostRef = hostRef;
+        this.future = new CompletableFuture<>();
+        if (hostRef != null) {
+            pending.add(this);
+            setCallback();
+        }
+    }
+
+    private synchronized void setCallback() {
+        if (callbackSet) {
+            return;
+        }
+        callbackSet = true;
+        clSetEventCallback(event, CL_COMPLETE, (e, status, data) -> completed(status), null);
+    }
+
+    private void completed(int status) {
+        hostRef = null;
+        pending.remove(this);
+        if (status < 0) {
+            future.completeExceptionally(new CLException(CL.stringFor_errorCode(status), status));
+        } else {
+            future.complete(null);
+        }
+        log.trace("Event completed {}", this);
+    }
+
+    /**
+     * Blocks until the command is completed.
+     */
+    public Event waitFor() {
+        clWaitForEvents(1, new cl_event[] { event });
+        return this;
+    }
+
+    /**
+     * Returns <code>true</code> if the command is completed.
+     */
+    public boolean isComplete() {
+        int[] status = { 0 };
+        clGetEventInfo(event, CL_EVENT_COMMAND_EXECUTION_STATUS, Sizeof.cl_int, Pointer.to(status), null);
+        return status[0] == CL_COMPLETE;
+    }
+
+    /**
+     * Returns a {@link CompletableFuture} that is completed from the OpenCL event
+     * callback after the command is completed. The future must be obtained
+     * before the event is closed.
+     */
+    public CompletableFuture<Void> toFuture() {
+        setCallback();
+        return future;
+    }
+
+    @Override
+    public cl_event get() {
+        return event;
+    }
+
+    @Override
+    public void close() {
+        if (event == null) {
+            return;
+        }
+        clReleaseEvent(event);
+        log.trace("Event released {}", this);
+        event = null;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("id", event).build();
+    }
+}
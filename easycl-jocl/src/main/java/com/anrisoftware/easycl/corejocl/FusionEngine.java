@@ -0,0 +1,200 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.validState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.CLException;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Evaluates {@link ElementwiseExpr}s with one fused kernel for each expression
+ * shape.
+ * <p>
+ * The kernel of an expression is generated, compiled with the
+ * {@link ProgramFactory} and cached by the context and the signature of the
+ * expression. A chain of element-wise operations then costs one launch and one
+ * read of each input and one write of the output, instead of one launch and a
+ * full read and write of global memory for each operation.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+@Singleton
+public class FusionEngine implements AutoCloseable {
+
+    /**
+     * Name of the generated kernel function.
+     */
+    public static final String KERNEL_NAME = "fused";
+
+    private static class Fused {
+
+        final Program program;
+
+        final KernelPool pool;
+
+        Fused(Program program, KernelPool pool) {
+            this.program = program;
+            this.pool = pool;
+        }
+    }
+
+    private final ProgramFactory programFactory;
+
+    private final KernelPoolFactory kernelPoolFactory;
+
+    private final Map<List<Object>, Fused> cache;
+
+    private volatile boolean closed;
+
+    @Inject
+    public FusionEngine(ProgramFactory programFactory, KernelPoolFactory kernelPoolFactory) {
+        this.programFactory = programFactory;
+        this.kernelPoolFactory = kernelPoolFactory;
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Enqueues the evaluation of the expression and returns the {@link Event}
+     * of the launch.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param expr     the {@link ElementwiseExpr}.
+     * @param out      the output {@link Buffer} of at least <code>n</code>
+     *                 floats. The output can be one of the inputs.
+     * @param n        the number of elements.
+     * @param waitList the {@link Event}s that must complete before the launch.
+     */
+    public Event submit(cl_command_queue queue, ElementwiseExpr expr, Buffer out, long n, Event... waitList)
+            throws CLException {
+        isTrue(n > 0 && n <= 0xffffffffL, "Invalid number of elements %d", n);
+        var fused = fused(out.getContext(), expr);
+        var inputs = expr.getInputs();
+        var constants = expr.getConstants();
+        return fused.pool.withKernel(kernel -> {
+            int index = 0;
+            for (var input : inputs) {
+                kernel.set(index++, input);
+            }
+            kernel.set(index++, out);
+            for (float c : constants) {
+                kernel.set(index++, c);
+            }
+            kernel.set(index, (int) n);
+            return kernel.submit(new EnqueueArgs(queue, NDRange.d0Range(), NDRange.d1Range(n), NDRange.d0Range(),
+                    waitList));
+        });
+    }
+
+    /**
+     * Evaluates the expression and waits for the completion.
+     *
+     * @see #submit(cl_command_queue, ElementwiseExpr, Buffer, long, Event...)
+     */
+    public void evaluate(cl_command_queue queue, ElementwiseExpr expr, Buffer out, long n) throws CLException {
+        try (var event = submit(queue, expr, out, n)) {
+            event.waitFor();
+        }
+    }
+
+    /**
+     * Returns the number of compiled kernels.
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private Fused fused(cl_context context, ElementwiseExpr expr) {
+        validState(!closed, "Fusion engine is closed");
+        return cache.computeIfAbsent(List.of(context, expr.getSignature()), key -> compile(context, expr));
+    }
+
+    private Fused compile(cl_context context, ElementwiseExpr expr) {
+        var source = expr.toSource(KERNEL_NAME);
+        var program = (Program) programFactory.create(() -> context, source, "fused-" + expr.getSignature());
+        program.buildProgram();
+        var args = new ArrayList<Arg>();
+        for (int i = 0; i < expr.getInputs().size(); i++) {
+            args.add(Arg.abuffer);
+        }
+        args.add(Arg.abuffer);
+        for (int i = 0; i < expr.getConstants().length; i++) {
+            args.add(Arg.afloat);
+        }
+        args.add(Arg.aint);
+        var pool = kernelPoolFactory.create(program, KERNEL_NAME, args);
+        log.debug("Compiled fused kernel {}", expr.getSignature());
+        return new Fused(program, pool);
+    }
+
+    /**
+     * Releases the compiled kernels and programs of the context. Must be called
+     * before the context is released. Kernels that are still leased are
+     * released when they are returned.
+     */
+    public void release(Supplier<cl_context> context) {
+        var ctx = context.get();
+        for (var it = cache.entrySet().iterator(); it.hasNext();) {
+            var entry = it.next();
+            if (entry.getKey().get(0).equals(ctx)) {
+                it.remove();
+                closeFused(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Releases the compiled kernels and programs.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (var fused : cache.values()) {
+            closeFused(fused);
+        }
+        cache.clear();
+        log.trace("Fusion engine released {}", this);
+    }
+
+    private void closeFused(Fused fused) {
+        fused.pool.close();
+        try {
+            fused.program.close();
+        } catch (Exception e) {
+            log.warn("Error release program {}", fused.program, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("kernels", cache.size()).build();
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.validState;
+import static org.jocl.CL.CL_MAP_READ;
+import static org.jocl.CL.CL_MAP_WRITE_INVALIDATE_REGION;
+import static org.jocl.CL.CL_MEM_READ_WRITE;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Off-heap host memory with 64-bit offsets that is freed on {@link #close()}.
+ * <p>
+ * The memory is a pinned {@link org.jocl.CL#CL_MEM_ALLOC_HOST_PTR} buffer, so
+ * it is not limited to 2 GiB and is not freed by the garbage collector. The
+ * host accesses the memory through mapped windows of at most
+ * {@link #MAX_WINDOW_SIZE} bytes. Transfers to and from device buffers are
+ * copies between memory objects, which the driver does with DMA from the
+ * pinned memory. On integrated GPUs and CPU devices the segment can be used
+ * directly as a kernel argument.
+ * <p>
+ * All windows must be closed before the segment is used by a device command.
+ *
+ * <pre>
+ * def segment = HostSegment.allocate(bufferFactory, context, queue, 6L * 1024 * 1024 * 1024)
+ * segment.withCloseable {
+ *     segment.map(offset, windowSize, CL_MAP_WRITE).withCloseable { it.get().put(data) }
+ *     buffer.write(queue.get(), 0, size, segment, 0)
+ * }
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class HostSegment implements Supplier<cl_mem>, AutoCloseable {
+
+    /**
+     * The maximum size of a mapped window, 1 GiB.
+     */
+    public static final int MAX_WINDOW_SIZE = 1 << 30;
+
+    /**
+     * Allocates a new host segment.
+     *
+     * @param bufferFactory the {@link BufferFactory}.
+     * @param context       the {@link Supplier} that supplies the
+     *                      {@link cl_context}.
+     * @param queue         the {@link Supplier} that supplies the
+     *                      {@link cl_command_queue} that maps the windows and
+     *                      copies the data.
+     * @param size          the size in bytes.
+     */
+    public static HostSegment allocate(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, long size) {
+        var buffer = (Buffer) Buffer.allocHostPtr(bufferFactory, context, CL_MEM_READ_WRITE, size);
+        return new HostSegment(buffer, queue.get(), size);
+    }
+
+    private final Buffer buffer;
+
+    private final cl_command_queue queue;
+
+    private final long size;
+
+    private final AtomicInteger openWindows;
+
+    /**
+     * Wraps the pinned buffer. The segment takes the ownership of the buffer.
+     */
+    public HostSegment(Buffer buffer, cl_command_queue queue, long size) {
+        this.buffer = buffer;
+        this.queue = queue;
+        this.size = size;
+        this.openWindows = new AtomicInteger();
+        log.debug("Created host segment {}", this);
+    }
+
+    /**
+     * Maps a window of the segment. The window is unmapped when the returned
+     * {@link MappedBuffer} is closed.
+     *
+     * @param offset   the offset in bytes of the window.
+     * @param length   the size in bytes of the window, at most
+     *                 {@link #MAX_WINDOW_SIZE}.
+     * @param mapFlags the map flags, for example
+     *                 {@link org.jocl.CL#CL_MAP_WRITE}.
+     */
+    public MappedBuffer map(long offset, int length, long mapFlags) {
+        checkRegion(offset, length);
+        isTrue(length <= MAX_WINDOW_SIZE, "Window size %d is larger than %d", length, MAX_WINDOW_SIZE);
+        var mapped = buffer.map(queue, mapFlags, offset, length);
+        openWindows.incrementAndGet();
+        mapped.setOnUnmap(openWindows::decrementAndGet);
+        return mapped;
+    }
+
+    /**
+     * Copies the remaining bytes of the source into the segment starting at the
+     * offset. Blocks until the bytes are written.
+     */
+    public void put(long offset, ByteBuffer src) {
+        checkRegion(offset, src.remaining());
+        var s = src.duplicate();
+        while (s.hasRemaining()) {
+            var length = Math.min(s.remaining(), MAX_WINDOW_SIZE);
+            try (var window = map(offset, length, CL_MAP_WRITE_INVALIDATE_REGION)) {
+                var chunk = s.duplicate();
+                chunk.limit(chunk.position() + length);
+                window.get().put(chunk);
+            }
+            s.position(s.position() + length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Copies bytes from the segment starting at the offset into the remaining
+     * bytes of the destination. Blocks until the bytes are read.
+     */
+    public void get(long offset, ByteBuffer dest) {
+        checkRegion(offset, dest.remaining());
+        var d = dest.duplicate();
+        while (d.hasRemaining()) {
+            var length = Math.min(d.remaining(), MAX_WINDOW_SIZE);
+            try (var window = map(offset, length, CL_MAP_READ)) {
+                d.put(window.get());
+            }
+            offset += length;
+        }
+    }
+
+    /**
+     * Copies a region of the segment into the device buffer. Blocks until the
+     * region is copied.
+     */
+    public void copyTo(Buffer dest, long srcOffset, long destOffset, long length) {
+        validState(openWindows.get() == 0, "Host segment has %d mapped windows", openWindows.get());
+        checkRegion(srcOffset, length);
+        buffer.copyTo(queue, dest, srcOffset, destOffset, length);
+    }
+
+    /**
+     * Enqueues a copy of a region of the segment into the device buffer.
+     */
+    public Event copyToAsync(Buffer dest, long srcOffset, long destOffset, long length, Event... waitList) {
+        validState(openWindows.get() == 0, "Host segment has %d mapped windows", openWindows.get());
+        checkRegion(srcOffset, length);
+        return buffer.copyToAsync(queue, dest, srcOffset, destOffset, length, waitList);
+    }
+
+    /**
+     * Copies a region of the device buffer into the segment. Blocks until the
+     * region is copied.
+     */
+    public void copyFrom(Buffer src, long srcOffset, long destOffset, long length) {
+        validState(openWindows.get() == 0, "Host segment has %d mapped windows", openWindows.get());
+        checkRegion(destOffset, length);
+        src.copyTo(queue, buffer, srcOffset, destOffset, length);
+    }
+
+    /**
+     * Enqueues a copy of a region of the device buffer into the segment.
+     */
+    public Event copyFromAsync(Buffer src, long srcOffset, long destOffset, long length, Event... waitList) {
+        validState(openWindows.get() == 0, "Host segment has %d mapped windows", openWindows.get());
+        checkRegion(destOffset, length);
+        return src.copyToAsync(queue, buffer, srcOffset, destOffset, length, waitList);
+    }
+
+    private void checkRegion(long offset, long length) {
+        isTrue(offset >= 0 && length >= 0 && offset + length <= size, "Region %d+%d outside of the segment",
+                offset, length);
+    }
+
+    /**
+     * Returns the pinned {@link Buffer} of the segment, for example to use the
+     * segment as a kernel argument.
+     */
+    public Buffer getBuffer() {
+        return buffer;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getOpenWindows() {
+        return openWindows.get();
+    }
+
+    @Override
+    public cl_mem get() {
+        return buffer.get();
+    }
+
+    /**
+     * Frees the memory of the segment.
+     */
+    @Override
+    public void close() throws Exception {
+        if (openWindows.get() > 0) {
+            log.warn("Host segment is closed with {} mapped windows {}", openWindows.get(), this);
+        }
+        buffer.close();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("buffer", buffer).append("size", size).build();
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.jocl.CL.CL_BLOCKING;
+import static org.jocl.CL.CL_IMAGE_DEPTH;
+import static org.jocl.CL.CL_IMAGE_HEIGHT;
+import static org.jocl.CL.CL_IMAGE_WIDTH;
+import static org.jocl.CL.CL_MEM_OBJECT_IMAGE2D;
+import static org.jocl.CL.CL_MEM_OBJECT_IMAGE3D;
+import static org.jocl.CL.CL_NON_BLOCKING;
+import static org.jocl.CL.clCreateImage;
+import static org.jocl.CL.clEnqueueMapImage;
+import static org.jocl.CL.clEnqueueReadImage;
+import static org.jocl.CL.clEnqueueWriteImage;
+import static org.jocl.CL.clGetImageInfo;
+import static org.jocl.CL.clReleaseMemObject;
+
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_event;
+import org.jocl.cl_image_desc;
+import org.jocl.cl_image_format;
+import org.jocl.cl_mem;
+
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Wrapper around an image {@link cl_mem}.
+ * <p>
+ * Images are read in kernels with <code>read_imagef</code> and a
+ * {@link Sampler}, so the reads go through the texture cache of the device.
+ * The origin and region arguments of the read, write and map operations are
+ * in pixels, with unused dimensions set to 0 for the origin and 1 for the
+ * region.
+ *
+ * <pre>
+ * def image = imageFactory.create(context, CL_MEM_READ_ONLY, Image.format(CL_RGBA, CL_FLOAT), Image.desc2D(width, height))
+ * image.write(queue.get(), [0, 0, 0] as long[], [width, height, 1] as long[], 0, 0, FloatBuffer.wrap(pixels))
+ * kernel.set(0, image).set(1, sampler)
+ * </pre>
+ *
+ * @see ImageFactory
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class Image implements HaveContext, Supplier<cl_mem>, AutoCloseable {
+
+    /**
+     * Returns the image format with the channel order and channel data type.
+     *
+     * @param channelOrder the channel order, for example
+     *                     {@link org.jocl.CL#CL_RGBA}.
+     * @param channelType  the channel data type, for example
+     *                     {@link org.jocl.CL#CL_FLOAT}.
+     */
+    public static cl_image_format format(int channelOrder, int channelType) {
+        var format = new cl_image_format();
+        format.image_channel_order = channelOrder;
+        format.image_channel_data_type = channelType;
+        return format;
+    }
+
+    /**
+     * Returns the descriptor of a 2D image.
+     */
+    public static cl_image_desc desc2D(long width, long height) {
+        var desc = new cl_image_desc();
+        desc.image_type = CL_MEM_OBJECT_IMAGE2D;
+        desc.image_width = width;
+        desc.image_height = height;
+        return desc;
+    }
+
+    /**
+     * Returns the descriptor of a 3D image.
+     */
+    public static cl_image_desc desc3D(long width, long height, long depth) {
+        var desc = new cl_image_desc();
+        desc.image_type = CL_MEM_OBJECT_IMAGE3D;
+        desc.image_width = width;
+        desc.image_height = height;
+        desc.image_depth = depth;
+        return desc;
+    }
+
+    private final cl_context context;
+
+    private final cl_image_format format;
+
+    private final cl_image_desc desc;
+
+    private cl_mem mem;
+
+    @AssistedInject
+    public Image(@Assisted Supplier<cl_context> context, @Assisted("flags") long flags,
+            @Assisted cl_image_format format, @Assisted cl_image_desc desc) {
+        this(context, flags, format, desc, null);
+    }
+
+    @AssistedInject
+    public Image(@Assisted Supplier<cl_context> context, @Assisted("flags") long flags,
+            @Assisted cl_image_format format, @Assisted cl_image_desc desc, @Assisted Pointer ptr) {
+        this.context = context.get();
+        this.format = format;
+        this.desc = desc;
+        this.mem = clCreateImage(this.context, flags, format, desc, ptr, null);
+        log.debug("Created image {}", this);
+    }
+
+    /**
+     * Reads a region of the image. Blocks until the region is read.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param origin     the origin in pixels of the region.
+     * @param region     the size in pixels of the region.
+     * @param rowPitch   the length in bytes of a row in the destination or 0
+     *                   for tightly packed rows.
+     * @param slicePitch the size in bytes of a slice in the destination or 0
+     *                   for tightly packed slices.
+     * @param dest       the {@link Pointer} destination.
+     */
+    public void read(cl_command_queue queue, long[] origin, long[] region, long rowPitch, long slicePitch,
+            Pointer dest) {
+        var event = QueueProfiler.event(queue);
+        clEnqueueReadImage(queue, mem, CL_BLOCKING, origin, region, rowPitch, slicePitch, dest, 0, null, event);
+        QueueProfiler.recordOwned(queue, "readImage", event);
+    }
+
+    public void read(cl_command_queue queue, long[] origin, long[] region, long rowPitch, long slicePitch,
+            java.nio.Buffer dest) {
+        read(queue, origin, region, rowPitch, slicePitch, Pointer.toBuffer(dest));
+    }
+
+    /**
+     * Enqueues a non-blocking read of a region of the image into the specified
+     * direct buffer. The destination buffer is kept reachable until the read is
+     * completed.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param origin     the origin in pixels of the region.
+     * @param region     the size in pixels of the region.
+     * @param rowPitch   the length in bytes of a row in the destination or 0.
+     * @param slicePitch the size in bytes of a slice in the destination or 0.
+     * @param dest       the direct {@link java.nio.Buffer} destination.
+     * @param waitList   the {@link Event}s that must complete before the read.
+     * @return the {@link Event} of the read command.
+     */
+    public Event readAsync(cl_command_queue queue, long[] origin, long[] region, long rowPitch, long slicePitch,
+            java.nio.Buffer dest, Event... waitList) {
+        isTrue(dest.isDirect(), "Non-blocking read needs a direct buffer");
+        var event = new cl_event();
+        clEnqueueReadImage(queue, mem, CL_NON_BLOCKING, origin, region, rowPitch, slicePitch, Pointer.toBuffer(dest),
+                Event.waitListSize(waitList), Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "readImage", event);
+        return new Event(event, dest);
+    }
+
+    /**
+     * Writes a region of the image. Blocks until the region is written.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param origin     the origin in pixels of the region.
+     * @param region     the size in pixels of the region.
+     * @param rowPitch   the length in bytes of a row in the source or 0 for
+     *                   tightly packed rows.
+     * @param slicePitch the size in bytes of a slice in the source or 0 for
+     *                   tightly packed slices.
+     * @param src        the {@link Pointer} source.
+     */
+    public void write(cl_command_queue queue, long[] origin, long[] region, long rowPitch, long slicePitch,
+            Pointer src) {
+        var event = QueueProfiler.event(queue);
+        clEnqueueWriteImage(queue, mem, CL_BLOCKING, origin, region, rowPitch, slicePitch, src, 0, null, event);
+        QueueProfiler.recordOwned(queue, "writeImage", event);
+    }
+
+    public void write(cl_command_queue queue, long[] origin, long[] region, long rowPitch, long slicePitch,
+            java.nio.Buffer src) {
+        write(queue, origin, region, rowPitch, slicePitch, Pointer.toBuffer(src));
+    }
+
+    /**
+     * Enqueues a non-blocking write of a region of the image from the specified
+     * direct buffer. The source buffer is kept reachable until the write is
+     * completed.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param origin     the origin in pixels of the region.
+     * @param region     the size in pixels of the region.
+     * @param rowPitch   the length in bytes of a row in the source or 0.
+     * @param slicePitch the size in bytes of a slice in the source or 0.
+     * @param src        the direct {@link java.nio.Buffer} source.
+     * @param waitList   the {@link Event}s that must complete before the write.
+     * @return the {@link Event} of the write command.
+     */
+    public Event writeAsync(cl_command_queue queue, long[] origin, long[] region, long rowPitch, long slicePitch,
+            java.nio.Buffer src, Event... waitList) {
+        isTrue(src.isDirect(), "Non-blocking write needs a direct buffer");
+        var event = new cl_event();
+        clEnqueueWriteImage(queue, mem, CL_NON_BLOCKING, origin, region, rowPitch, slicePitch, Pointer.toBuffer(src),
+                Event.waitListSize(waitList), Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "writeImage", event);
+        return new Event(event, src);
+    }
+
+    /**
+     * Maps a region of the image into the host memory. Blocks until the region
+     * is mapped.
+     *
+     * @param queue      the {@link cl_command_queue}.
+     * @param mapFlags   the map flags, for example
+     *                   {@link org.jocl.CL#CL_MAP_READ}.
+     * @param origin     the origin in pixels of the region.
+     * @param region     the size in pixels of the region.
+     * @param rowPitch   receives the length in bytes of a row of the mapped
+     *                   region.
+     * @param slicePitch receives the size in bytes of a slice of the mapped
+     *                   region, 0 for 2D images.
+     * @param waitList   the {@link Event}s that must complete before the map.
+     * @return the {@link MappedBuffer} that unmaps the region on close.
+     */
+    public MappedBuffer map(cl_command_queue queue, long mapFlags, long[] origin, long[] region, long[] rowPitch,
+            long[] slicePitch, Event... waitList) {
+        var event = QueueProfiler.event(queue);
+        var mapped = clEnqueueMapImage(queue, mem, CL_BLOCKING, mapFlags, origin, region, rowPitch, slicePitch,
+                Event.waitListSize(waitList), Event.toWaitList(waitList), event, null);
+        QueueProfiler.recordOwned(queue, "mapImage", event);
+        return new MappedBuffer(queue, mem, mapped);
+    }
+
+    public long retrieveWidth() {
+        return retrieveImageInfo(CL_IMAGE_WIDTH);
+    }
+
+    public long retrieveHeight() {
+        return retrieveImageInfo(CL_IMAGE_HEIGHT);
+    }
+
+    public long retrieveDepth() {
+        return retrieveImageInfo(CL_IMAGE_DEPTH);
+    }
+
+    private long retrieveImageInfo(int param) {
+        long[] value = { 0 };
+        clGetImageInfo(mem, param, Sizeof.size_t, Pointer.to(value), null);
+        return value[0];
+    }
+
+    public cl_image_format getFormat() {
+        return format;
+    }
+
+    public cl_image_desc getDesc() {
+        return desc;
+    }
+
+    @Override
+    public cl_context getContext() {
+        return context;
+    }
+
+    @Override
+    public cl_mem get() {
+        return mem;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (mem == null) {
+            return;
+        }
+        clReleaseMemObject(mem);
+        log.trace("Image released {}", this);
+        mem = null;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("context", context).append("id", mem).build();
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import java.util.function.Supplier;
+
+import org.jocl.Pointer;
+import org.jocl.cl_context;
+import org.jocl.cl_image_desc;
+import org.jocl.cl_image_format;
+import org.jocl.cl_mem;
+
+import com.google.inject.assistedinject.Assisted;
+
+/**
+ * Factory to create a new {@link Supplier} that supplies an image
+ * {@link cl_mem}.
+ *
+ * @see Image
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public interface ImageFactory {
+
+    /**
+     * Creates a new {@link Supplier} that supplies an image {@link cl_mem}.
+     *
+     * @param context the {@link Supplier} that supplies the {@link cl_context}.
+     * @param flags   the memory flags.
+     * @param format  the {@link cl_image_format}.
+     * @param desc    the {@link cl_image_desc}.
+     */
+    Supplier<cl_mem> create(@Assisted Supplier<cl_context> context, @Assisted("flags") long flags,
+            @Assisted cl_image_format format, @Assisted cl_image_desc desc);
+
+    /**
+     * Creates a new {@link Supplier} that supplies an image {@link cl_mem}.
+     *
+     * @param context the {@link Supplier} that supplies the {@link cl_context}.
+     * @param flags   the memory flags.
+     * @param format  the {@link cl_image_format}.
+     * @param desc    the {@link cl_image_desc}.
+     * @param ptr     the {@link Pointer} to the data.
+     */
+    Supplier<cl_mem> create(@Assisted Supplier<cl_context> context, @Assisted("flags") long flags,
+            @Assisted cl_image_format format, @Assisted cl_image_desc desc, @Assisted Pointer ptr);
+}
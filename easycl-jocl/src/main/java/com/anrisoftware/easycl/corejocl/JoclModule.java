@@ -17,6 +17,7 @@ package com.anrisoftware.easycl.corejocl;
 
 import java.util.function.Supplier;
 
+import org.jocl.Pointer;
 import org.jocl.cl_command_queue;
 import org.jocl.cl_context;
 import org.jocl.cl_device_id;
@@ -24,6 +25,7 @@ import org.jocl.cl_kernel;
 import org.jocl.cl_mem;
 import org.jocl.cl_platform_id;
 import org.jocl.cl_program;
+import org.jocl.cl_sampler;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.TypeLiteral;
@@ -36,7 +38,14 @@ import com.google.inject.assistedinject.FactoryModuleBuilder;
  * @see ProgramFactory
  * @see CommandQueueFactory
  * @see BufferFactory
+ * @see PooledBufferFactory
+ * @see ManagedBufferFactory
+ * @see ImageFactory
+ * @see SamplerFactory
+ * @see SvmBufferFactory
  * @see KernelFactory
+ * @see KernelPoolFactory
+ * @see StagingRingFactory
  * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
  */
 public class JoclModule extends AbstractModule {
@@ -55,7 +64,15 @@ public class JoclModule extends AbstractModule {
         }, CommandQueue.class).build(CommandQueueFactory.class));
         install(new FactoryModuleBuilder().implement(new TypeLiteral<Supplier<cl_mem>>() {
         }, Buffer.class).build(BufferFactory.class));
+        install(new FactoryModuleBuilder().implement(new TypeLiteral<Supplier<cl_mem>>() {
+        }, Image.class).build(ImageFactory.class));
+        install(new FactoryModuleBuilder().implement(new TypeLiteral<Supplier<cl_sampler>>() {
+        }, Sampler.class).build(SamplerFactory.class));
+        install(new FactoryModuleBuilder().implement(new TypeLiteral<Supplier<Pointer>>() {
+        }, SvmBuffer.class).build(SvmBufferFactory.class));
         install(new FactoryModuleBuilder().implement(new TypeLiteral<Supplier<cl_kernel>>() {
         }, Kernel.class).build(KernelFactory.class));
+        install(new FactoryModuleBuilder().build(KernelPoolFactory.class));
+        install(new FactoryModuleBuilder().build(StagingRingFactory.class));
     }
 }
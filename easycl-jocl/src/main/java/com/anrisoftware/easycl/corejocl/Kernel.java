@@ -15,130 +15,574 @@
  */
 package com.anrisoftware.easycl.corejocl;
 
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.jocl.CL.CL_KERNEL_EXEC_INFO_SVM_PTRS;
+import static org.jocl.CL.CL_KERNEL_LOCAL_MEM_SIZE;
+import static org.jocl.CL.CL_KERNEL_PREFERRED_WORK_GROUP_SIZE_MULTIPLE;
+import static org.jocl.CL.CL_KERNEL_PROGRAM;
+import static org.jocl.CL.CL_KERNEL_WORK_GROUP_SIZE;
 import static org.jocl.CL.clCreateKernel;
 import static org.jocl.CL.clEnqueueNDRangeKernel;
+import static org.jocl.CL.clGetKernelInfo;
+import static org.jocl.CL.clGetKernelWorkGroupInfo;
 import static org.jocl.CL.clReleaseKernel;
 import static org.jocl.CL.clSetKernelArg;
+import static org.jocl.CL.clSetKernelArgSVMPointer;
+import static org.jocl.CL.clSetKernelExecInfo;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.function.Supplier;
 
-import javax.inject.Inject;
-
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.jocl.CLException;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_device_id;
+import org.jocl.cl_event;
 import org.jocl.cl_kernel;
-import org.jocl.cl_platform_id;
 import org.jocl.cl_program;
 
 import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Wrapper around {@link cl_kernel}.
+ * <p>
+ * The setters remember the last bound value of each argument and skip the
+ * <code>clSetKernelArg</code> call if the value did not change. Primitive
+ * values are staged in preallocated native memory, so setting arguments does
+ * not allocate. Memory objects are compared by the identity of their handle.
  *
  * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
  */
 @Slf4j
 public class Kernel implements HaveName, Supplier<cl_kernel>, AutoCloseable, Callable<Void> {
 
+    /**
+     * Size in bytes of the staging slot of an argument.
+     */
+    private static final int SLOT_SIZE = 8;
+
+    /**
+     * Marks an argument that is bound to <code>__local</code> memory.
+     */
+    private static final int LOCAL_SLOT = -1;
+
     private final String name;
 
     private cl_kernel kernel;
 
     private final List<Arg> args;
 
+    private List<KernelArgInfo> argInfos;
+
     private EnqueueArgs enqueueArgs;
 
     /**
-     * Obtains a {@link cl_kernel} from the specified platform.
+     * Native storage of the primitive argument values, one slot per argument.
+     */
+    private final ByteBuffer staging;
+
+    private final Pointer[] slotPointers;
+
+    private final boolean[] bound;
+
+    private final long[] lastBits;
+
+    private final int[] lastSizes;
+
+    private final Object[] lastHandles;
+
+    /**
+     * Spillable buffers that are set as arguments, resolved again before each
+     * launch.
+     */
+    private final ManagedBuffer[] managed;
+
+    /**
+     * Creates the kernel with the specified argument types.
      *
-     * @param platform the {@link Supplier} that returns the {@link cl_platform_id}.
+     * @param program the {@link Supplier} that returns the {@link cl_program}.
+     * @param name    the name of the kernel function.
+     * @param args    the {@link Arg} of each argument of the kernel.
      */
-    @Inject
+    @AssistedInject
     public Kernel(@Assisted Supplier<cl_program> program, @Assisted String name, @Assisted List<Arg> args) {
+        this(name, clCreateKernel(program.get(), name, null), null, args);
+        int n = KernelArgInfo.retrieveNumArgs(kernel);
+        if (n != args.size()) {
+            log.warn("Kernel {} has {} arguments but {} were specified", name, n, args.size());
+        }
+    }
+
+    /**
+     * Creates the kernel with the argument types from
+     * <code>clGetKernelArgInfo</code>. The program must be built with the
+     * {@link KernelArgInfo#BUILD_OPTION} if the kernel has arguments.
+     *
+     * @param program the {@link Supplier} that returns the {@link cl_program}.
+     * @param name    the name of the kernel function.
+     */
+    @AssistedInject
+    public Kernel(@Assisted Supplier<cl_program> program, @Assisted String name) {
+        this(name, clCreateKernel(program.get(), name, null));
+    }
+
+    private Kernel(String name, cl_kernel kernel) {
+        this(name, kernel, KernelArgInfo.retrieveAll(kernel));
+    }
+
+    private Kernel(String name, cl_kernel kernel, List<KernelArgInfo> argInfos) {
+        this(name, kernel, argInfos, argInfos.stream().map(KernelArgInfo::toArg).collect(toList()));
+    }
+
+    private Kernel(String name, cl_kernel kernel, List<KernelArgInfo> argInfos, List<Arg> args) {
         this.name = name;
+        this.kernel = kernel;
+        this.argInfos = argInfos;
         this.args = new ArrayList<>(args);
-        createKernel(program.get(), name);
+        var n = args.size();
+        this.staging = ByteBuffer.allocateDirect(n * SLOT_SIZE).order(ByteOrder.nativeOrder());
+        this.slotPointers = new Pointer[n];
+        for (int i = 0; i < n; i++) {
+            slotPointers[i] = Pointer.toBuffer(staging.duplicate().position(i * SLOT_SIZE).slice());
+        }
+        this.bound = new boolean[n];
+        this.lastBits = new long[n];
+        this.lastSizes = new int[n];
+        this.lastHandles = new Object[n];
+        this.managed = new ManagedBuffer[n];
+        log.debug("Created kernel {}", this);
     }
 
-    private void createKernel(cl_program program, String name) {
-        this.kernel = clCreateKernel(program, name, null);
-        log.debug("Created kernel {}", this);
+    /**
+     * Returns the information of the arguments. The program must be built with
+     * the {@link KernelArgInfo#BUILD_OPTION}.
+     */
+    public synchronized List<KernelArgInfo> retrieveArgInfos() {
+        if (argInfos == null) {
+            argInfos = KernelArgInfo.retrieveAll(kernel);
+        }
+        return argInfos;
+    }
+
+    /**
+     * Returns the index of the argument with the name.
+     *
+     * @throws IllegalArgumentException if the kernel has no argument with the
+     *                                  name.
+     */
+    public int retrieveArgIndex(String name) {
+        for (var info : retrieveArgInfos()) {
+            if (info.name.equals(name)) {
+                return info.index;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Kernel %s has no argument %s", this.name, name));
+    }
+
+    /**
+     * Returns the argument with the name. The name is resolved once, so the
+     * returned {@link NamedArg} should be kept and reused for each launch.
+     */
+    public NamedArg arg(String name) {
+        return new NamedArg(this, name, retrieveArgIndex(name));
     }
 
+    public List<Arg> getArgs() {
+        return Collections.unmodifiableList(args);
+    }
+
+    /**
+     * Sets the scalar argument. The value is converted to the declared
+     * {@link Arg} of the argument like a Java cast, for example an
+     * <code>int</code> is widened for an {@link Arg#along} argument.
+     */
     public Kernel set(int index, byte v) {
-        var a = args.get(index);
-        clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
-        return this;
+        return setScalar(index, v, v, Arg.abyte);
     }
 
+    /**
+     * Sets the low byte of the value as an OpenCL <code>char</code>, or the
+     * value converted to the declared {@link Arg} of the argument.
+     */
     public Kernel set(int index, char v) {
-        var a = args.get(index);
-        clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
-        return this;
+        return setScalar(index, v, v, Arg.achar);
     }
 
     public Kernel set(int index, double v) {
-        var a = args.get(index);
-        clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
-        return this;
+        return setScalar(index, (long) v, v, Arg.adouble);
     }
 
     public Kernel set(int index, float v) {
-        var a = args.get(index);
-        clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
-        return this;
+        return setScalar(index, (long) v, v, Arg.afloat);
     }
 
     public Kernel set(int index, int v) {
-        var a = args.get(index);
-        clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
-        return this;
+        return setScalar(index, v, v, Arg.aint);
     }
 
     public Kernel set(int index, long v) {
-        var a = args.get(index);
-        clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
-        return this;
+        return setScalar(index, v, v, Arg.along);
     }
 
     public Kernel set(int index, short v) {
-        var a = args.get(index);
-        clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
-        return this;
+        return setScalar(index, v, v, Arg.ashort);
     }
 
+    /**
+     * Sets the buffer as the argument. A spillable {@link ManagedBuffer} is
+     * restored and bound again before each launch if it was spilled in the
+     * meantime, and the kernel must be launched on the queue of the buffer.
+     */
     public Kernel set(int index, Buffer v) {
-        var a = args.get(index);
-        clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
+        setHandle(index, v.get(), v);
+        if (v instanceof ManagedBuffer && ((ManagedBuffer) v).isSpillable()) {
+            managed[index] = (ManagedBuffer) v;
+        }
+        return this;
+    }
+
+    /**
+     * Allocates <code>__local</code> memory for the argument. Each work-group
+     * gets its own memory of the size.
+     *
+     * @param index the index of the argument.
+     * @param bytes the size in bytes of the local memory.
+     */
+    public Kernel setLocal(int index, long bytes) {
+        if (unchanged(index, bytes, LOCAL_SLOT)) {
+            return this;
+        }
+        clSetKernelArg(kernel, index, bytes, null);
+        return this;
+    }
+
+    /**
+     * Allocates <code>__local</code> memory for <code>count</code> elements of
+     * the element size, for example {@link Sizeof#cl_float}.
+     */
+    public Kernel setLocal(int index, int elementSize, long count) {
+        return setLocal(index, elementSize * count);
+    }
+
+    /**
+     * Returns the size in bytes of the local memory that is available for
+     * <code>__local</code> arguments on the device. That is the local memory of
+     * the device minus the local memory that the kernel already uses.
+     */
+    public long retrieveAvailableLocalMem(cl_device_id device) {
+        return Device.retrieveLocalMemSize(device) - retrieveWorkGroupLong(device, CL_KERNEL_LOCAL_MEM_SIZE);
+    }
+
+    /**
+     * Returns the size in bytes of the local memory that the kernel uses on the
+     * device, including the memory of the <code>__local</code> arguments that
+     * are set.
+     */
+    public long retrieveLocalMemSize(cl_device_id device) {
+        return retrieveWorkGroupLong(device, CL_KERNEL_LOCAL_MEM_SIZE);
+    }
+
+    /**
+     * Returns the maximum work-group size of the kernel on the device.
+     */
+    public long retrieveWorkGroupSize(cl_device_id device) {
+        return retrieveWorkGroupLong(device, CL_KERNEL_WORK_GROUP_SIZE);
+    }
+
+    /**
+     * Returns the multiple of the work-group size that the device prefers for
+     * the kernel, for example the warp or wavefront size.
+     */
+    public long retrievePreferredWorkGroupSizeMultiple(cl_device_id device) {
+        return retrieveWorkGroupLong(device, CL_KERNEL_PREFERRED_WORK_GROUP_SIZE_MULTIPLE);
+    }
+
+    /**
+     * Returns the program of the kernel.
+     */
+    public cl_program retrieveProgram() {
+        var program = new cl_program();
+        clGetKernelInfo(kernel, CL_KERNEL_PROGRAM, Sizeof.cl_program, Pointer.to(program), null);
+        return program;
+    }
+
+    long retrieveWorkGroupLong(cl_device_id device, int param) {
+        long[] value = { 0 };
+        clGetKernelWorkGroupInfo(kernel, device, param, Sizeof.cl_ulong, Pointer.to(value), null);
+        return value[0];
+    }
+
+    /**
+     * Sets the pinned buffer of the host segment as the argument.
+     */
+    public Kernel set(int index, HostSegment v) {
+        return set(index, v.getBuffer());
+    }
+
+    public Kernel set(int index, Image v) {
+        return setHandle(index, v.get(), v);
+    }
+
+    public Kernel set(int index, Sampler v) {
+        return setHandle(index, v.get(), v);
+    }
+
+    /**
+     * Sets the shared virtual memory allocation as the argument. Any pointer
+     * argument accepts the allocation, also an argument whose {@link Arg} is
+     * {@link Arg#abuffer} because it was created from the argument information.
+     */
+    public Kernel set(int index, SvmBuffer v) {
+        var svm = v.get();
+        if (bound[index] && lastHandles[index] == svm) {
+            return this;
+        }
+        clSetKernelArgSVMPointer(kernel, index, svm);
+        bindHandle(index, svm);
+        return this;
+    }
+
+    /**
+     * Sets the shared virtual memory allocations that the kernel accesses
+     * through pointers stored in other allocations and not as arguments.
+     */
+    public Kernel setIndirectSvm(SvmBuffer... v) {
+        var pointers = new Pointer[v.length];
+        for (int i = 0; i < v.length; i++) {
+            pointers[i] = v[i].get();
+        }
+        clSetKernelExecInfo(kernel, CL_KERNEL_EXEC_INFO_SVM_PTRS, (long) Sizeof.POINTER * v.length,
+                Pointer.to(pointers));
         return this;
     }
 
     public Kernel set(int index, CommandQueue v) {
+        return setHandle(index, v.get(), v);
+    }
+
+    /**
+     * Forgets the last bound values, so the next setters call
+     * <code>clSetKernelArg</code> again.
+     */
+    public void clearArgCache() {
+        Arrays.fill(bound, false);
+        Arrays.fill(lastHandles, null);
+    }
+
+    /**
+     * Returns <code>true</code> if the argument is already bound to the value,
+     * otherwise remembers the value.
+     */
+    private boolean unchanged(int index, long bits, int size) {
+        if (bound[index] && lastHandles[index] == null && lastBits[index] == bits && lastSizes[index] == size) {
+            return true;
+        }
+        bound[index] = true;
+        lastHandles[index] = null;
+        managed[index] = null;
+        lastBits[index] = bits;
+        lastSizes[index] = size;
+        return false;
+    }
+
+    /**
+     * Stages the value in the slot of the argument with the width of the
+     * declared {@link Arg}, or with the width of the setter if the argument is
+     * not a scalar.
+     */
+    private Kernel setScalar(int index, long integral, double real, Arg natural) {
+        var a = args.get(index);
+        if (!isScalar(a)) {
+            a = natural;
+        }
+        long bits;
+        if (a == Arg.adouble) {
+            bits = Double.doubleToRawLongBits(real);
+        } else if (a == Arg.afloat) {
+            bits = Float.floatToRawIntBits((float) real);
+        } else if (a == Arg.along) {
+            bits = integral;
+        } else if (a == Arg.aint) {
+            bits = (int) integral;
+        } else if (a == Arg.ashort) {
+            bits = (short) integral;
+        } else {
+            bits = (byte) integral;
+        }
+        int size = (int) a.getSize(null);
+        if (unchanged(index, bits, size)) {
+            return this;
+        }
+        int offset = index * SLOT_SIZE;
+        switch (size) {
+        case Sizeof.cl_long:
+            staging.putLong(offset, bits);
+            break;
+        case Sizeof.cl_int:
+            staging.putInt(offset, (int) bits);
+            break;
+        case Sizeof.cl_short:
+            staging.putShort(offset, (short) bits);
+            break;
+        default:
+            staging.put(offset, (byte) bits);
+            break;
+        }
+        clSetKernelArg(kernel, index, size, slotPointers[index]);
+        return this;
+    }
+
+    private static boolean isScalar(Arg a) {
+        return a == Arg.abyte || a == Arg.achar || a == Arg.ashort || a == Arg.aint || a == Arg.along
+                || a == Arg.afloat || a == Arg.adouble;
+    }
+
+    private Kernel setHandle(int index, Object handle, Object v) {
+        if (bound[index] && lastHandles[index] == handle) {
+            return this;
+        }
         var a = args.get(index);
         clSetKernelArg(kernel, index, a.getSize(v), a.getPointer(v));
+        bindHandle(index, handle);
         return this;
     }
 
+    private void bindHandle(int index, Object handle) {
+        bound[index] = true;
+        lastHandles[index] = handle;
+        managed[index] = null;
+        lastSizes[index] = 0;
+    }
+
     public Kernel enqueue(EnqueueArgs args) {
         this.enqueueArgs = args;
         return this;
     }
 
+    /**
+     * Enqueues the kernel with the last {@link EnqueueArgs}. Waits for the
+     * wait list of the arguments but does not return an event.
+     */
     @Override
     public Void call() throws CLException {
-        var offset = enqueueArgs.offset;
-        var global = enqueueArgs.global;
-        var local = enqueueArgs.local;
-        clEnqueueNDRangeKernel(enqueueArgs.queue, kernel, global.dims, offset.dims != 0 ? offset.sizes : null,
-                global.sizes, local.dims != 0 ? local.sizes : null, 0, null, null);
+        enqueueKernel(enqueueArgs, null);
         return null;
     }
 
+    /**
+     * Enqueues the kernel with the last {@link EnqueueArgs} and returns the
+     * {@link Event} of the launch. The event can be part of the wait list of
+     * the next transfer or launch, or converted with {@link Event#toFuture()}.
+     */
+    public Event submit() throws CLException {
+        var event = new cl_event();
+        enqueueKernel(enqueueArgs, event);
+        return new Event(event);
+    }
+
+    /**
+     * Enqueues the kernel with the arguments and returns the {@link Event} of
+     * the launch.
+     */
+    public Event submit(EnqueueArgs args) throws CLException {
+        return enqueue(args).submit();
+    }
+
+    /**
+     * Returns a launch of the kernel that is split into parts of the global
+     * range.
+     *
+     * @see ChunkedLaunch
+     */
+    public ChunkedLaunch chunked(EnqueueArgs args) {
+        return new ChunkedLaunch(this, args);
+    }
+
+    /**
+     * Enqueues the kernel with the arguments without replacing the last
+     * {@link EnqueueArgs}. Pins the spillable buffer arguments for the launch
+     * and binds the memory objects again that were replaced by a spill and
+     * restore. The launch must be enqueued on the queue of the spillable
+     * buffers, so a later spill on that queue waits until the kernel is
+     * completed.
+     *
+     * @param launchArgs the {@link EnqueueArgs} of the launch.
+     * @param event      the {@link cl_event} of the launch or <code>null</code>.
+     */
+    void enqueueKernel(EnqueueArgs launchArgs, cl_event event) {
+        for (var buffer : managed) {
+            if (buffer != null) {
+                isTrue(buffer.getQueue().equals(launchArgs.queue),
+                        "Kernel %s launched on another queue than the spillable buffer %s", name, buffer);
+            }
+        }
+        for (var buffer : managed) {
+            if (buffer != null) {
+                buffer.pin();
+            }
+        }
+        try {
+            for (int i = 0; i < managed.length; i++) {
+                if (managed[i] != null) {
+                    var mem = managed[i].get();
+                    if (lastHandles[i] != mem) {
+                        clSetKernelArg(kernel, i, Sizeof.cl_mem, Pointer.to(mem));
+                        lastHandles[i] = mem;
+                    }
+                }
+            }
+            enqueueResolved(launchArgs, event);
+        } finally {
+            for (var buffer : managed) {
+                if (buffer != null) {
+                    buffer.unpin();
+                }
+            }
+        }
+    }
+
+    private void enqueueResolved(EnqueueArgs launchArgs, cl_event event) {
+        if (launchArgs.boundsArg >= 0) {
+            bindBounds(launchArgs.bounds, launchArgs.boundsArg);
+        }
+        var offset = launchArgs.offset;
+        var global = launchArgs.global;
+        var local = launchArgs.local;
+        var waitList = launchArgs.waitList;
+        var queue = launchArgs.queue;
+        var profiled = event != null ? event : QueueProfiler.event(queue);
+        clEnqueueNDRangeKernel(queue, kernel, global.dims, offset.dims != 0 ? offset.sizes : null, global.sizes,
+                local.dims != 0 ? local.sizes : null, Event.waitListSize(waitList), Event.toWaitList(waitList),
+                profiled);
+        if (event != null) {
+            QueueProfiler.record(queue, name, event);
+        } else {
+            QueueProfiler.recordOwned(queue, name, profiled);
+        }
+    }
+
+    private void bindBounds(NDRange bounds, int first) {
+        for (int i = 0; i < bounds.dims; i++) {
+            int index = first + i;
+            if (args.get(index) == Arg.along) {
+                set(index, bounds.sizes[i]);
+            } else {
+                set(index, (int) bounds.sizes[i]);
+            }
+        }
+    }
+
     @Override
     public String getName() {
         return name;
@@ -0,0 +1,163 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.jocl.CL.CL_KERNEL_ARG_ACCESS_QUALIFIER;
+import static org.jocl.CL.CL_KERNEL_ARG_ADDRESS_LOCAL;
+import static org.jocl.CL.CL_KERNEL_ARG_ADDRESS_QUALIFIER;
+import static org.jocl.CL.CL_KERNEL_ARG_NAME;
+import static org.jocl.CL.CL_KERNEL_ARG_TYPE_NAME;
+import static org.jocl.CL.CL_KERNEL_ARG_TYPE_QUALIFIER;
+import static org.jocl.CL.CL_KERNEL_NUM_ARGS;
+import static org.jocl.CL.clGetKernelArgInfo;
+import static org.jocl.CL.clGetKernelInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_kernel;
+
+import lombok.Data;
+
+/**
+ * Argument of a kernel as reported by <code>clGetKernelArgInfo</code>. The
+ * program must be built with the {@link #BUILD_OPTION} to make the names and
+ * types of the arguments available.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Data
+public class KernelArgInfo {
+
+    /**
+     * Build option that keeps the argument information of the kernels.
+     */
+    public static final String BUILD_OPTION = "-cl-kernel-arg-info";
+
+    /**
+     * Returns the number of arguments of the kernel.
+     */
+    public static int retrieveNumArgs(cl_kernel kernel) {
+        int[] value = { 0 };
+        clGetKernelInfo(kernel, CL_KERNEL_NUM_ARGS, Sizeof.cl_uint, Pointer.to(value), null);
+        return value[0];
+    }
+
+    /**
+     * Returns the information of all arguments of the kernel.
+     */
+    public static List<KernelArgInfo> retrieveAll(cl_kernel kernel) {
+        int n = retrieveNumArgs(kernel);
+        var infos = new ArrayList<KernelArgInfo>(n);
+        for (int i = 0; i < n; i++) {
+            infos.add(retrieve(kernel, i));
+        }
+        return infos;
+    }
+
+    /**
+     * Returns the information of the argument of the kernel.
+     */
+    public static KernelArgInfo retrieve(cl_kernel kernel, int index) {
+        int[] address = { 0 };
+        clGetKernelArgInfo(kernel, index, CL_KERNEL_ARG_ADDRESS_QUALIFIER, Sizeof.cl_uint, Pointer.to(address), null);
+        int[] access = { 0 };
+        clGetKernelArgInfo(kernel, index, CL_KERNEL_ARG_ACCESS_QUALIFIER, Sizeof.cl_uint, Pointer.to(access), null);
+        long[] type = { 0 };
+        clGetKernelArgInfo(kernel, index, CL_KERNEL_ARG_TYPE_QUALIFIER, Sizeof.cl_ulong, Pointer.to(type), null);
+        return new KernelArgInfo(index, retrieveString(kernel, index, CL_KERNEL_ARG_NAME),
+                retrieveString(kernel, index, CL_KERNEL_ARG_TYPE_NAME), address[0], access[0], type[0]);
+    }
+
+    private static String retrieveString(cl_kernel kernel, int index, int param) {
+        long[] size = { 0 };
+        clGetKernelArgInfo(kernel, index, param, 0, null, size);
+        var buffer = new byte[(int) size[0]];
+        clGetKernelArgInfo(kernel, index, param, size[0], Pointer.to(buffer), null);
+        return new String(buffer, 0, Math.max(0, buffer.length - 1), StandardCharsets.US_ASCII);
+    }
+
+    public final int index;
+
+    public final String name;
+
+    /**
+     * The type name without qualifiers, for example <code>float*</code>,
+     * <code>uint</code> or <code>image2d_t</code>.
+     */
+    public final String typeName;
+
+    /**
+     * One of the <code>CL_KERNEL_ARG_ADDRESS_*</code> values.
+     */
+    public final int addressQualifier;
+
+    /**
+     * One of the <code>CL_KERNEL_ARG_ACCESS_*</code> values.
+     */
+    public final int accessQualifier;
+
+    /**
+     * Bit field of the <code>CL_KERNEL_ARG_TYPE_*</code> values.
+     */
+    public final long typeQualifier;
+
+    /**
+     * Returns the {@link Arg} for the type of the argument.
+     *
+     * @throws IllegalArgumentException if the type is not supported, for
+     *                                  example a vector or a struct type.
+     */
+    public Arg toArg() {
+        if (addressQualifier == CL_KERNEL_ARG_ADDRESS_LOCAL) {
+            return Arg.alocal;
+        }
+        var type = typeName.trim();
+        if (type.endsWith("*")) {
+            return Arg.abuffer;
+        }
+        if (type.startsWith("image")) {
+            return Arg.aimage;
+        }
+        if (type.startsWith("u")) {
+            type = type.substring(1);
+        }
+        switch (type) {
+        case "sampler_t":
+            return Arg.asampler;
+        case "queue_t":
+            return Arg.aqueue;
+        case "char":
+            return Arg.abyte;
+        case "short":
+            return Arg.ashort;
+        case "int":
+            return Arg.aint;
+        case "long":
+            return Arg.along;
+        case "float":
+            return Arg.afloat;
+        case "double":
+            return Arg.adouble;
+        default:
+            throw new IllegalArgumentException(
+                    String.format("Unsupported type %s of kernel argument %d %s", typeName, index, name));
+        }
+    }
+}
@@ -36,4 +36,14 @@ public interface KernelFactory {
      * @param program the {@link Supplier} that returns the {@link cl_program}.
      */
     Supplier<cl_kernel> create(Supplier<cl_program> program, String name, List<Arg> args);
+
+    /**
+     * Creates a new {@link Supplier} that supplies a {@link cl_kernel} with the
+     * arguments from <code>clGetKernelArgInfo</code>. The program must be built
+     * with the {@link KernelArgInfo#BUILD_OPTION} if the kernel has arguments.
+     *
+     * @param program the {@link Supplier} that returns the {@link cl_program}.
+     * @param name    the name of the kernel function.
+     */
+    Supplier<cl_kernel> create(Supplier<cl_program> program, String name);
 }
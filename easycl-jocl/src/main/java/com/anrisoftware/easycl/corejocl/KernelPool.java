@@ -0,0 +1,212 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.validState;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.cl_program;
+
+import com.google.inject.assistedinject.Assisted;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pool of {@link Kernel} instances of the same kernel function.
+ * <p>
+ * The arguments of a kernel object must not be set from several threads at
+ * the same time. The pool leases one instance to one thread, so request
+ * threads can set arguments and launch the same kernel concurrently. New
+ * instances are created with the {@link KernelFactory} if all instances are
+ * leased, and returned instances are kept for the next lease. Each instance
+ * keeps its bound arguments, so values that did not change since the last
+ * lease of the instance are not set again.
+ *
+ * <pre>
+ * def pool = kernelPoolFactory.create(program, "vectorAdd", [abuffer, abuffer, abuffer])
+ * try (def lease = pool.lease()) {
+ *     lease.get().set(0, a).set(1, b).set(2, c).submit(args).waitFor().close()
+ * }
+ * </pre>
+ *
+ * @see KernelPoolFactory
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class KernelPool implements HaveName, AutoCloseable {
+
+    /**
+     * Lease of a {@link Kernel} that returns the kernel to the pool on close.
+     *
+     * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+     */
+    public class Lease implements Supplier<Kernel>, AutoCloseable {
+
+        private Kernel kernel;
+
+        private Lease(Kernel kernel) {
+            this.kernel = kernel;
+        }
+
+        @Override
+        public Kernel get() {
+            validState(kernel != null, "Lease is returned");
+            return kernel;
+        }
+
+        @Override
+        public void close() {
+            if (kernel == null) {
+                return;
+            }
+            release(kernel);
+            kernel = null;
+        }
+    }
+
+    private final KernelFactory kernelFactory;
+
+    private final Supplier<cl_program> program;
+
+    private final String name;
+
+    private final List<Arg> args;
+
+    private final ConcurrentLinkedDeque<Kernel> idle;
+
+    private final AtomicInteger size;
+
+    private volatile boolean closed;
+
+    @Inject
+    public KernelPool(KernelFactory kernelFactory, @Assisted Supplier<cl_program> program, @Assisted String name,
+            @Assisted List<Arg> args) {
+        this.kernelFactory = kernelFactory;
+        this.program = program;
+        this.name = name;
+        this.args = List.copyOf(args);
+        this.idle = new ConcurrentLinkedDeque<>();
+        this.size = new AtomicInteger();
+        log.debug("Created kernel pool {}", this);
+    }
+
+    /**
+     * Takes an idle kernel or creates a new kernel. The kernel must be returned
+     * with {@link #release(Kernel)}.
+     */
+    public Kernel acquire() {
+        validState(!closed, "Kernel pool is closed");
+        var kernel = idle.pollFirst();
+        if (kernel == null) {
+            kernel = (Kernel) kernelFactory.create(program, name, args);
+            size.incrementAndGet();
+            log.trace("Created pooled kernel {}", kernel);
+        }
+        return kernel;
+    }
+
+    /**
+     * Returns the kernel to the pool. The kernel is released if the pool is
+     * closed.
+     */
+    public void release(Kernel kernel) {
+        if (closed) {
+            closeKernel(kernel);
+            return;
+        }
+        idle.addFirst(kernel);
+        // close() may have drained the idle kernels between the check and the
+        // add, so the kernel is released here unless close() took it already.
+        if (closed && idle.remove(kernel)) {
+            closeKernel(kernel);
+        }
+    }
+
+    /**
+     * Leases a kernel that is returned to the pool when the lease is closed.
+     */
+    public Lease lease() {
+        return new Lease(acquire());
+    }
+
+    /**
+     * Calls the function with a leased kernel and returns the kernel to the
+     * pool afterwards.
+     */
+    public <T> T withKernel(Function<Kernel, T> function) {
+        var kernel = acquire();
+        try {
+            return function.apply(kernel);
+        } finally {
+            release(kernel);
+        }
+    }
+
+    /**
+     * Returns the number of kernels that the pool created and not released.
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of kernels that are not leased.
+     */
+    public int getIdle() {
+        return idle.size();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Releases the idle kernels. Leased kernels are released when they are
+     * returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Kernel kernel;
+        while ((kernel = idle.pollFirst()) != null) {
+            closeKernel(kernel);
+        }
+        log.trace("Kernel pool released {}", this);
+    }
+
+    private void closeKernel(Kernel kernel) {
+        try {
+            kernel.close();
+        } catch (Exception e) {
+            log.warn("Error release kernel {}", kernel, e);
+        }
+        size.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("name", name).append("size", size.get()).build();
+    }
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.jocl.CL.CL_QUEUE_DEVICE;
+import static org.jocl.CL.clFinish;
+import static org.jocl.CL.clGetCommandQueueInfo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.CLException;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_device_id;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds the fastest local work size of a kernel for a global work size and
+ * stores the result per device in a properties file.
+ * <p>
+ * The candidates of the first dimension are the multiples of
+ * {@link org.jocl.CL#CL_KERNEL_PREFERRED_WORK_GROUP_SIZE_MULTIPLE}, and of the
+ * other dimensions the powers of two, that divide the global size of the
+ * dimension and whose product is not larger than
+ * {@link org.jocl.CL#CL_KERNEL_WORK_GROUP_SIZE}, plus the local size that the
+ * driver chooses. If no multiple divides the global size of the first
+ * dimension, for example 1000 with a multiple of 32, all divisors of the
+ * global size are candidates instead. A global size that is padded with
+ * {@link EnqueueArgs#padded(cl_command_queue, NDRange, NDRange)} to a
+ * multiple avoids the slower divisors.
+ * <p>
+ * Each candidate is launched with the current kernel arguments, so the kernel
+ * must produce the same result if it is run repeatedly. The
+ * {@link EnqueueArgs} of the kernel are not changed. The results are keyed by
+ * the device name, the driver version and a hash of the kernel name and
+ * program source, so a driver update or a changed kernel is tuned again.
+ *
+ * <pre>
+ * kernel.set(0, input).set(1, output)
+ * kernel.enqueue(localSizeTuner.tunedArgs(kernel, queue.get(), NDRange.d1Range(count))).call()
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+@Singleton
+public class LocalSizeTuner {
+
+    /**
+     * Value of the driver chosen local size in the cache file.
+     */
+    private static final String DEFAULT_LOCAL = "default";
+
+    private Path cacheFile;
+
+    private Properties cache;
+
+    private int warmup;
+
+    private int iterations;
+
+    /**
+     * Hash of the name and program source of each kernel.
+     */
+    private final Map<Kernel, String> kernelHashes;
+
+    /**
+     * Hash of the name and driver version of each device.
+     */
+    private final Map<cl_device_id, String> deviceHashes;
+
+    @Inject
+    public LocalSizeTuner() {
+        this.kernelHashes = Collections.synchronizedMap(new WeakHashMap<>());
+        this.deviceHashes = new ConcurrentHashMap<>();
+        this.cacheFile = Paths.get(System.getProperty("user.home"), ".cache", "easycl", "local-sizes.properties");
+        this.warmup = 2;
+        this.iterations = 5;
+    }
+
+    /**
+     * Sets the file that stores the tuned local sizes.
+     */
+    public synchronized void setCacheFile(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        this.cache = null;
+    }
+
+    public synchronized Path getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Sets the number of launches of each candidate before the measurement.
+     */
+    public synchronized void setWarmup(int warmup) {
+        isTrue(warmup >= 0, "Invalid warmup %d", warmup);
+        this.warmup = warmup;
+    }
+
+    /**
+     * Sets the number of measured launches of each candidate. The fastest
+     * launch is the time of the candidate.
+     */
+    public synchronized void setIterations(int iterations) {
+        isTrue(iterations > 0, "Invalid iterations %d", iterations);
+        this.iterations = iterations;
+    }
+
+    /**
+     * Returns the {@link EnqueueArgs} with the tuned local size.
+     *
+     * @param kernel the {@link Kernel} with all arguments set.
+     * @param queue  the {@link cl_command_queue}.
+     * @param global the global work size.
+     */
+    public EnqueueArgs tunedArgs(Kernel kernel, cl_command_queue queue, NDRange global) {
+        return new EnqueueArgs(queue, global, tune(kernel, queue, global));
+    }
+
+    /**
+     * Returns the tuned local size of the kernel for the global work size. The
+     * local size is looked up in the cache file or measured and stored if the
+     * kernel was not tuned on the device before.
+     *
+     * @param kernel the {@link Kernel} with all arguments set.
+     * @param queue  the {@link cl_command_queue}.
+     * @param global the global work size.
+     * @return the local work size or {@link NDRange#d0Range()} if the local
+     *         size that the driver chooses is the fastest.
+     */
+    public NDRange tune(Kernel kernel, cl_command_queue queue, NDRange global) {
+        isTrue(global.dims > 0, "Global work size without dimensions");
+        var device = retrieveDevice(queue);
+        var key = cacheKey(device, kernel, global);
+        synchronized (this) {
+            return tune(kernel, queue, device, global, key);
+        }
+    }
+
+    private NDRange tune(Kernel kernel, cl_command_queue queue, cl_device_id device, NDRange global, String key) {
+        var cached = loadCache().getProperty(key);
+        if (cached != null) {
+            return parseLocal(global.dims, cached);
+        }
+        var best = measure(kernel, queue, device, global);
+        cache.setProperty(key, formatLocal(best));
+        storeCache();
+        log.debug("Tuned local size {} for {} on {}", best, kernel.getName(), Device.retrieveName(device));
+        return best;
+    }
+
+    private NDRange measure(Kernel kernel, cl_command_queue queue, cl_device_id device, NDRange global) {
+        var best = NDRange.d0Range();
+        long bestTime = time(kernel, queue, global, best);
+        for (var local : candidates(kernel, device, global)) {
+            long time;
+            try {
+                time = time(kernel, queue, global, local);
+            } catch (CLException e) {
+                log.trace("Local size {} rejected for {}: {}", local, kernel.getName(), e.getMessage());
+                continue;
+            }
+            if (time < bestTime) {
+                bestTime = time;
+                best = local;
+            }
+        }
+        return best;
+    }
+
+    private List<NDRange> candidates(Kernel kernel, cl_device_id device, NDRange global) {
+        var candidates = new ArrayList<NDRange>();
+        long max = Math.min(kernel.retrieveWorkGroupSize(device), Device.retrieveMaxWorkGroupSize(device));
+        long multiple = Math.max(1, kernel.retrievePreferredWorkGroupSizeMultiple(device));
+        addCandidates(candidates, global, new long[] { 1, 1, 1 }, 0, multiple, max);
+        return candidates;
+    }
+
+    /**
+     * Adds the local sizes of the dimension and of the following dimensions,
+     * the multiples of the preferred multiple or the divisors for the first
+     * dimension and the powers of two for the other dimensions.
+     */
+    private static void addCandidates(List<NDRange> candidates, NDRange global, long[] sizes, int dim,
+            long multiple, long max) {
+        if (dim == global.dims) {
+            candidates.add(new NDRange(global.dims, sizes.clone()));
+            return;
+        }
+        long product = 1;
+        for (int i = 0; i < dim; i++) {
+            product *= sizes[i];
+        }
+        long size = global.sizes[dim];
+        long step = dim == 0 && hasMultipleDivisor(size, multiple, max) ? multiple : 1;
+        for (long l = step; product * l <= max && l <= size; l = dim == 0 ? l + step : l * 2) {
+            if (size % l == 0) {
+                sizes[dim] = l;
+                addCandidates(candidates, global, sizes, dim + 1, multiple, max);
+            }
+        }
+        sizes[dim] = 1;
+    }
+
+    private static boolean hasMultipleDivisor(long size, long multiple, long max) {
+        for (long l = multiple; l <= max && l <= size; l += multiple) {
+            if (size % l == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Measures the candidate without replacing the {@link EnqueueArgs} of the
+     * kernel.
+     */
+    private long time(Kernel kernel, cl_command_queue queue, NDRange global, NDRange local) {
+        var args = new EnqueueArgs(queue, global, local);
+        for (int i = 0; i < warmup; i++) {
+            kernel.enqueueKernel(args, null);
+        }
+        clFinish(queue);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            kernel.enqueueKernel(args, null);
+            clFinish(queue);
+            min = Math.min(min, System.nanoTime() - start);
+        }
+        return min;
+    }
+
+    private static cl_device_id retrieveDevice(cl_command_queue queue) {
+        var device = new cl_device_id();
+        clGetCommandQueueInfo(queue, CL_QUEUE_DEVICE, Sizeof.cl_device_id, Pointer.to(device), null);
+        return device;
+    }
+
+    private String cacheKey(cl_device_id device, Kernel kernel, NDRange global) {
+        var kernelHash = kernelHashes.computeIfAbsent(kernel,
+                k -> sha256(k.getName() + '\n' + Program.retrieveSource(k.retrieveProgram())));
+        var deviceHash = deviceHashes.computeIfAbsent(device,
+                d -> sha256(Device.retrieveName(d) + '\n' + Device.retrieveDriverVersion(d)));
+        return String.format("%s.%s.%s", deviceHash.substring(0, 16), kernelHash.substring(0, 16),
+                formatSizes(Arrays.copyOf(global.sizes, Math.max(1, global.dims))));
+    }
+
+    private static String sha256(String s) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+            var hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String formatLocal(NDRange local) {
+        return local.dims == 0 ? DEFAULT_LOCAL : formatSizes(local.sizes);
+    }
+
+    private static String formatSizes(long[] sizes) {
+        var s = new StringBuilder();
+        for (int i = 0; i < sizes.length; i++) {
+            s.append(i == 0 ? "" : "x").append(sizes[i]);
+        }
+        return s.toString();
+    }
+
+    private static NDRange parseLocal(int dims, String value) {
+        if (DEFAULT_LOCAL.equals(value)) {
+            return NDRange.d0Range();
+        }
+        var parts = value.split("x");
+        var sizes = new long[] { 1, 1, 1 };
+        for (int i = 0; i < parts.length && i < sizes.length; i++) {
+            sizes[i] = Long.parseLong(parts[i]);
+        }
+        return new NDRange(dims, sizes);
+    }
+
+    private Properties loadCache() {
+        if (cache != null) {
+            return cache;
+        }
+        cache = new Properties();
+        if (Files.isRegularFile(cacheFile)) {
+            try (var reader = Files.newBufferedReader(cacheFile, StandardCharsets.ISO_8859_1)) {
+                cache.load(reader);
+            } catch (IOException e) {
+                log.warn("Failed to read local size cache {}: {}", cacheFile, e.getMessage());
+            }
+        }
+        return cache;
+    }
+
+    private void storeCache() {
+        try {
+            var parent = cacheFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (var writer = Files.newBufferedWriter(cacheFile, StandardCharsets.ISO_8859_1)) {
+                cache.store(writer, "easycl tuned local work sizes");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("cacheFile", cacheFile).append("warmup", warmup)
+                .append("iterations", iterations).build();
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.jocl.CL.CL_BLOCKING;
+import static org.jocl.CL.clCreateBuffer;
+import static org.jocl.CL.clEnqueueReadBuffer;
+import static org.jocl.CL.clEnqueueWriteBuffer;
+import static org.jocl.CL.clReleaseMemObject;
+
+import java.nio.ByteBuffer;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.Pointer;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link Buffer} whose size is accounted in the memory budget of the
+ * {@link ManagedBufferFactory}.
+ * <p>
+ * A spillable buffer can be evicted to the host memory if other allocations
+ * need the device memory. The content is restored into a new memory object the
+ * next time the buffer is used, for example as a kernel argument. The spill
+ * and the restore are done on the queue of the buffer, so a spillable buffer
+ * must only be used on that queue and by one thread at a time. A buffer that
+ * is an argument of a {@link Kernel} is pinned while the kernel is enqueued, so
+ * the launch never uses a spilled memory object.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class ManagedBuffer extends Buffer {
+
+    /**
+     * Maximum size of one host chunk of a spilled buffer.
+     */
+    static final int SPILL_CHUNK_SIZE = 1 << 30;
+
+    private final MemoryBudget budget;
+
+    private final long flags;
+
+    private final long size;
+
+    private final cl_command_queue queue;
+
+    private ByteBuffer[] spilled;
+
+    private int pins;
+
+    ManagedBuffer(MemoryBudget budget, cl_context context, cl_mem mem, long flags, long size,
+            cl_command_queue queue) {
+        super(context, mem);
+        this.budget = budget;
+        this.flags = flags;
+        this.size = size;
+        this.queue = queue;
+    }
+
+    public boolean isSpillable() {
+        return queue != null;
+    }
+
+    /**
+     * Returns the queue of the spills and restores or <code>null</code> if the
+     * buffer is not spillable.
+     */
+    public cl_command_queue getQueue() {
+        return queue;
+    }
+
+    /**
+     * Returns <code>true</code> if the content of the buffer is currently
+     * held in the host memory.
+     */
+    public boolean isSpilled() {
+        return spilled != null;
+    }
+
+    /**
+     * Returns the memory object, restoring the buffer if it is spilled.
+     */
+    @Override
+    public cl_mem get() {
+        if (queue == null) {
+            return super.get();
+        }
+        return budget.use(this);
+    }
+
+    @Override
+    public long retrieveSize() {
+        return size;
+    }
+
+    cl_mem getResidentMem() {
+        return super.get();
+    }
+
+    boolean canSpill() {
+        return queue != null && spilled == null && pins == 0 && super.get() != null && getOpenSlices() == 0;
+    }
+
+    /**
+     * Protects the buffer from being spilled until {@link #unpin()}.
+     */
+    void pin() {
+        if (queue != null) {
+            budget.pin(this);
+        }
+    }
+
+    void unpin() {
+        if (queue != null) {
+            budget.unpin(this);
+        }
+    }
+
+    /**
+     * Changes the pin count, guarded by the lock of the budget.
+     */
+    void addPins(int count) {
+        pins += count;
+    }
+
+    /**
+     * Reads the content into direct host buffers of at most
+     * {@link #SPILL_CHUNK_SIZE} bytes, so buffers of 2 GiB and more can be
+     * spilled.
+     */
+    void spill() {
+        var chunks = new ByteBuffer[(int) ((size + SPILL_CHUNK_SIZE - 1) / SPILL_CHUNK_SIZE)];
+        var mem = detach();
+        try {
+            for (int i = 0; i < chunks.length; i++) {
+                long offset = (long) i * SPILL_CHUNK_SIZE;
+                int length = (int) Math.min(SPILL_CHUNK_SIZE, size - offset);
+                chunks[i] = ByteBuffer.allocateDirect(length);
+                var event = QueueProfiler.event(queue);
+                clEnqueueReadBuffer(queue, mem, CL_BLOCKING, offset, length, Pointer.to(chunks[i]), 0, null,
+                        event);
+                QueueProfiler.recordOwned(queue, "spill", event);
+            }
+        } catch (RuntimeException | Error e) {
+            attach(mem);
+            throw e;
+        }
+        clReleaseMemObject(mem);
+        spilled = chunks;
+    }
+
+    void restore() {
+        var mem = clCreateBuffer(getContext(), flags, size, null, null);
+        try {
+            for (int i = 0; i < spilled.length; i++) {
+                long offset = (long) i * SPILL_CHUNK_SIZE;
+                var event = QueueProfiler.event(queue);
+                clEnqueueWriteBuffer(queue, mem, CL_BLOCKING, offset, spilled[i].capacity(),
+                        Pointer.to(spilled[i]), 0, null, event);
+                QueueProfiler.recordOwned(queue, "restore", event);
+            }
+        } catch (RuntimeException | Error e) {
+            clReleaseMemObject(mem);
+            throw e;
+        }
+        attach(mem);
+        spilled = null;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (super.get() == null && spilled == null) {
+            return;
+        }
+        budget.remove(this);
+        spilled = null;
+        super.close();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).appendSuper(super.toString()).append("size", size)
+                .append("spillable", isSpillable()).append("spilled", isSpilled()).build();
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.jocl.CL.CL_MEM_COPY_HOST_PTR;
+import static org.jocl.CL.CL_MEM_USE_HOST_PTR;
+import static org.jocl.CL.clCreateBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link BufferFactory} that accounts every allocation in a per-context device
+ * memory budget.
+ * <p>
+ * The budget defaults to the smallest <code>CL_DEVICE_GLOBAL_MEM_SIZE</code>
+ * of the devices of the context. If an allocation would exceed the budget then
+ * the least recently used spillable buffers are evicted to the host memory and
+ * restored on their next use. If nothing can be spilled the allocation fails
+ * with an {@link IllegalStateException} before the driver is called. The
+ * memory objects are created by the default {@link BufferFactory}.
+ *
+ * <pre>
+ * &#64;Inject
+ * ManagedBufferFactory bufferFactory
+ *
+ * bufferFactory.setBudget(context, 2L * 1024 * 1024 * 1024)
+ * def table = bufferFactory.createSpillable(context, queue, CL_MEM_READ_WRITE, size)
+ * kernel.set(0, table) // restores the table if it was spilled
+ * </pre>
+ *
+ * @see ManagedBuffer
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+@Singleton
+public class ManagedBufferFactory implements BufferFactory {
+
+    private final BufferFactory bufferFactory;
+
+    private final Map<cl_context, MemoryBudget> budgets;
+
+    @Inject
+    public ManagedBufferFactory(BufferFactory bufferFactory) {
+        this.bufferFactory = bufferFactory;
+        this.budgets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Sets the budget in bytes of the context. Spills buffers if the used
+     * memory is above the new budget.
+     */
+    public void setBudget(Supplier<cl_context> context, long budget) {
+        isTrue(budget >= 0, "Budget must not be negative");
+        getMemoryBudget(context.get()).setBudget(budget);
+    }
+
+    public long getBudget(Supplier<cl_context> context) {
+        return getMemoryBudget(context.get()).getBudget();
+    }
+
+    /**
+     * Returns the size in bytes of the buffers of the context that are resident
+     * on the device.
+     */
+    public long getUsed(Supplier<cl_context> context) {
+        return getMemoryBudget(context.get()).getUsed();
+    }
+
+    /**
+     * Returns the number of buffers of the context that were spilled to the
+     * host.
+     */
+    public long getSpills(Supplier<cl_context> context) {
+        return getMemoryBudget(context.get()).getSpills();
+    }
+
+    /**
+     * Returns the number of buffers of the context that were restored from the
+     * host.
+     */
+    public long getRestores(Supplier<cl_context> context) {
+        return getMemoryBudget(context.get()).getRestores();
+    }
+
+    /**
+     * Removes the budget of the context. Must be called after all buffers of
+     * the context are closed and before the context is released.
+     */
+    public void remove(Supplier<cl_context> context) {
+        budgets.remove(context.get());
+    }
+
+    /**
+     * Creates a new buffer that can be spilled to the host memory under memory
+     * pressure.
+     *
+     * @param context the {@link Supplier} that supplies the {@link cl_context}.
+     * @param queue   the {@link Supplier} that supplies the
+     *                {@link cl_command_queue} that spills and restores the
+     *                buffer.
+     * @param flags   the buffer flags, without host pointer flags.
+     * @param size    the size of the buffer, at most 2 GiB.
+     */
+    public ManagedBuffer createSpillable(Supplier<cl_context> context, Supplier<cl_command_queue> queue, long flags,
+            long size) {
+        isTrue((flags & (CL_MEM_USE_HOST_PTR | CL_MEM_COPY_HOST_PTR)) == 0,
+                "Spillable buffers can not use a host pointer");
+        isTrue(size > 0 && size <= Integer.MAX_VALUE, "Invalid size %d of a spillable buffer", size);
+        var c = context.get();
+        var budget = getMemoryBudget(c);
+        budget.reserve(size);
+        cl_mem mem;
+        try {
+            mem = clCreateBuffer(c, flags, size, null, null);
+        } catch (RuntimeException e) {
+            budget.free(size);
+            throw e;
+        }
+        var buffer = new ManagedBuffer(budget, c, mem, flags, size, queue.get());
+        budget.addSpillable(buffer);
+        log.trace("Created spillable buffer {}", buffer);
+        return buffer;
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, long flags, long size) {
+        return track(context.get(), flags, size, () -> bufferFactory.create(context, flags, size));
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, long flags, long size, Pointer ptr) {
+        return track(context.get(), flags, size, () -> bufferFactory.create(context, flags, size, ptr));
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, ByteBuffer buffer,
+            boolean readOnly, boolean useHostPtr) {
+        return track(context.get(), 0, Sizeof.cl_char * buffer.capacity(),
+                () -> bufferFactory.create(context, queue, buffer, readOnly, useHostPtr));
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, CharBuffer buffer,
+            boolean readOnly, boolean useHostPtr) {
+        return track(context.get(), 0, Sizeof.cl_short * buffer.capacity(),
+                () -> bufferFactory.create(context, queue, buffer, readOnly, useHostPtr));
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue,
+            DoubleBuffer buffer, boolean readOnly, boolean useHostPtr) {
+        return track(context.get(), 0, Sizeof.cl_double * buffer.capacity(),
+                () -> bufferFactory.create(context, queue, buffer, readOnly, useHostPtr));
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue,
+            FloatBuffer buffer, boolean readOnly, boolean useHostPtr) {
+        return track(context.get(), 0, Sizeof.cl_float * buffer.capacity(),
+                () -> bufferFactory.create(context, queue, buffer, readOnly, useHostPtr));
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, IntBuffer buffer,
+            boolean readOnly, boolean useHostPtr) {
+        return track(context.get(), 0, Sizeof.cl_int * buffer.capacity(),
+                () -> bufferFactory.create(context, queue, buffer, readOnly, useHostPtr));
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, LongBuffer buffer,
+            boolean readOnly, boolean useHostPtr) {
+        return track(context.get(), 0, Sizeof.cl_long * buffer.capacity(),
+                () -> bufferFactory.create(context, queue, buffer, readOnly, useHostPtr));
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue,
+            ShortBuffer buffer, boolean readOnly, boolean useHostPtr) {
+        return track(context.get(), 0, Sizeof.cl_short * buffer.capacity(),
+                () -> bufferFactory.create(context, queue, buffer, readOnly, useHostPtr));
+    }
+
+    private ManagedBuffer track(cl_context context, long flags, long size, Supplier<Supplier<cl_mem>> create) {
+        var budget = getMemoryBudget(context);
+        budget.reserve(size);
+        cl_mem mem;
+        try {
+            mem = ((Buffer) create.get()).detach();
+        } catch (RuntimeException e) {
+            budget.free(size);
+            throw e;
+        }
+        var buffer = new ManagedBuffer(budget, context, mem, flags, size, null);
+        log.trace("Created managed buffer {}", buffer);
+        return buffer;
+    }
+
+    private MemoryBudget getMemoryBudget(cl_context context) {
+        return budgets.computeIfAbsent(context, MemoryBudget::new);
+    }
+}
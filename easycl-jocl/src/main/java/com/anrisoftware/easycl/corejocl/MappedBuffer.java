@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.jocl.CL.clEnqueueUnmapMemObject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_event;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Host view of a mapped {@link cl_mem} region. The view is unmapped on
+ * {@link #close()}, so it can be used in a try-with-resources block.
+ * <p>
+ * The returned buffers use the native byte order and must not be used after
+ * the view is unmapped.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class MappedBuffer implements Supplier<ByteBuffer>, AutoCloseable {
+
+    private final cl_command_queue queue;
+
+    private final cl_mem mem;
+
+    private ByteBuffer buffer;
+
+    private Runnable onUnmap;
+
+    /**
+     * Wraps the mapped region.
+     *
+     * @param queue  the {@link cl_command_queue} that is used to unmap the
+     *               region.
+     * @param mem    the mapped {@link cl_mem}.
+     * @param buffer the {@link ByteBuffer} returned by the map command.
+     */
+    public MappedBuffer(cl_command_queue queue, cl_mem mem, ByteBuffer buffer) {
+        this.queue = queue;
+        this.mem = mem;
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        log.trace("Mapped buffer {}", this);
+    }
+
+    /**
+     * Sets the action that is run once when the region is unmapped.
+     */
+    void setOnUnmap(Runnable onUnmap) {
+        this.onUnmap = onUnmap;
+    }
+
+    public CharBuffer asCharBuffer() {
+        return get().asCharBuffer();
+    }
+
+    public DoubleBuffer asDoubleBuffer() {
+        return get().asDoubleBuffer();
+    }
+
+    public FloatBuffer asFloatBuffer() {
+        return get().asFloatBuffer();
+    }
+
+    public IntBuffer asIntBuffer() {
+        return get().asIntBuffer();
+    }
+
+    public LongBuffer asLongBuffer() {
+        return get().asLongBuffer();
+    }
+
+    public ShortBuffer asShortBuffer() {
+        return get().asShortBuffer();
+    }
+
+    /**
+     * Returns the mapped host memory.
+     *
+     * @throws IllegalStateException if the region is already unmapped.
+     */
+    @Override
+    public ByteBuffer get() {
+        if (buffer == null) {
+            throw new IllegalStateException("Buffer is unmapped");
+        }
+        return buffer.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Enqueues the unmap command and returns its {@link Event}.
+     *
+     * @param waitList the {@link Event}s that must complete before the unmap.
+     */
+    public Event unmap(Event... waitList) {
+        var mapped = get();
+        var event = new cl_event();
+        clEnqueueUnmapMemObject(queue, mem, mapped, Event.waitListSize(waitList), Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "unmap", event);
+        unmapped();
+        return new Event(event);
+    }
+
+    @Override
+    public void close() {
+        if (buffer == null) {
+            return;
+        }
+        var event = QueueProfiler.event(queue);
+        clEnqueueUnmapMemObject(queue, mem, buffer, 0, null, event);
+        QueueProfiler.recordOwned(queue, "unmap", event);
+        unmapped();
+    }
+
+    private void unmapped() {
+        buffer = null;
+        log.trace("Unmapped buffer {}", this);
+        if (onUnmap != null) {
+            onUnmap.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("id", mem).append("queue", queue).build();
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.validState;
+
+import java.util.LinkedHashMap;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.cl_context;
+import org.jocl.cl_device_id;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Device memory budget of one context. Accounts the size of the
+ * {@link ManagedBuffer}s and spills the least recently used spillable buffers
+ * to the host if an allocation would exceed the budget.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+class MemoryBudget {
+
+    /**
+     * Returns the smallest global memory size of the devices of the context.
+     */
+    static long defaultBudget(cl_context context) {
+        var budget = Long.MAX_VALUE;
+        for (cl_device_id device : Context.retrieveDevices(context)) {
+            budget = Math.min(budget, Device.retrieveGlobalMemSize(device));
+        }
+        return budget;
+    }
+
+    private final cl_context context;
+
+    /**
+     * Resident spillable buffers in access order, the least recently used
+     * first.
+     */
+    private final LinkedHashMap<ManagedBuffer, Boolean> resident;
+
+    private long budget;
+
+    private long used;
+
+    private long spills;
+
+    private long restores;
+
+    MemoryBudget(cl_context context) {
+        this.context = context;
+        this.resident = new LinkedHashMap<>(16, 0.75f, true);
+        this.budget = defaultBudget(context);
+    }
+
+    synchronized void setBudget(long budget) {
+        this.budget = budget;
+        spillFor(0, null);
+    }
+
+    synchronized long getBudget() {
+        return budget;
+    }
+
+    synchronized long getUsed() {
+        return used;
+    }
+
+    synchronized long getSpills() {
+        return spills;
+    }
+
+    synchronized long getRestores() {
+        return restores;
+    }
+
+    /**
+     * Accounts the size of a new allocation, spilling other buffers if needed.
+     *
+     * @throws IllegalStateException if the budget is exceeded and no buffer can
+     *                               be spilled.
+     */
+    synchronized void reserve(long size) {
+        reserve(size, null);
+    }
+
+    synchronized void free(long size) {
+        used -= size;
+    }
+
+    /**
+     * Adds the resident spillable buffer as the most recently used buffer.
+     */
+    synchronized void addSpillable(ManagedBuffer buffer) {
+        resident.put(buffer, Boolean.TRUE);
+    }
+
+    /**
+     * Marks the buffer as used, restoring it if it was spilled, and returns its
+     * memory object.
+     */
+    synchronized cl_mem use(ManagedBuffer buffer) {
+        if (buffer.isSpilled()) {
+            reserve(buffer.retrieveSize(), buffer);
+            try {
+                buffer.restore();
+            } catch (RuntimeException | Error e) {
+                used -= buffer.retrieveSize();
+                throw e;
+            }
+            resident.put(buffer, Boolean.TRUE);
+            restores++;
+            log.trace("Restored buffer {}", buffer);
+        } else {
+            resident.get(buffer);
+        }
+        return buffer.getResidentMem();
+    }
+
+    /**
+     * Pins the buffer so it is not spilled for other allocations.
+     */
+    synchronized void pin(ManagedBuffer buffer) {
+        buffer.addPins(1);
+    }
+
+    synchronized void unpin(ManagedBuffer buffer) {
+        buffer.addPins(-1);
+    }
+
+    /**
+     * Removes the closed buffer from the accounting.
+     */
+    synchronized void remove(ManagedBuffer buffer) {
+        resident.remove(buffer);
+        if (!buffer.isSpilled()) {
+            used -= buffer.retrieveSize();
+        }
+    }
+
+    private void reserve(long size, ManagedBuffer requester) {
+        if (used + size > budget) {
+            spillFor(size, requester);
+        }
+        validState(used + size <= budget, "Device memory budget of %d bytes exceeded, used %d, requested %d",
+                budget, used, size);
+        used += size;
+    }
+
+    private void spillFor(long size, ManagedBuffer requester) {
+        var it = resident.keySet().iterator();
+        while (used + size > budget && it.hasNext()) {
+            var buffer = it.next();
+            if (buffer == requester || !buffer.canSpill()) {
+                continue;
+            }
+            it.remove();
+            buffer.spill();
+            used -= buffer.retrieveSize();
+            spills++;
+            log.trace("Spilled buffer {}", buffer);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return new ToStringBuilder(this).append("context", context).append("budget", budget).append("used", used)
+                .append("spills", spills).append("restores", restores).build();
+    }
+}
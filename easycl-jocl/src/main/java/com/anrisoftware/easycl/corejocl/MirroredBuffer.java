@@ -0,0 +1,244 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.Pointer;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link Buffer} with a host mirror that records the changed ranges.
+ * <p>
+ * Changes to the host mirror are recorded as dirty ranges and
+ * {@link #sync()} uploads only these ranges. Ranges that kernels write are
+ * declared with {@link #markDeviceWritten(long, long)} and
+ * {@link #syncFromDevice()} downloads only these ranges. Nearby ranges are
+ * coalesced, see {@link DirtyRanges}.
+ *
+ * <pre>
+ * def state = MirroredBuffer.create(bufferFactory, context, queue, CL_MEM_READ_WRITE, size)
+ * state.putFloat(index * 4, value)
+ * state.sync()
+ * kernel.set(0, state.buffer)
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class MirroredBuffer implements Supplier<cl_mem>, AutoCloseable {
+
+    /**
+     * The default merge gap, 4 KiB.
+     */
+    public static final long DEFAULT_MERGE_GAP = 4096;
+
+    /**
+     * Creates a new buffer and its zeroed host mirror. The buffer content is
+     * uploaded from the mirror on the first {@link #sync()}.
+     *
+     * @param bufferFactory the {@link BufferFactory}.
+     * @param context       the {@link Supplier} that supplies the
+     *                      {@link cl_context}.
+     * @param queue         the {@link Supplier} that supplies the
+     *                      {@link cl_command_queue} of the transfers.
+     * @param flags         the buffer flags.
+     * @param size          the size in bytes, at most 2 GiB.
+     */
+    public static MirroredBuffer create(BufferFactory bufferFactory, Supplier<cl_context> context,
+            Supplier<cl_command_queue> queue, long flags, int size) {
+        var buffer = (Buffer) bufferFactory.create(context, flags, size);
+        var mirror = new MirroredBuffer(buffer, queue.get(), ByteBuffer.allocateDirect(size));
+        mirror.markDirty(0, size);
+        return mirror;
+    }
+
+    private final Buffer buffer;
+
+    private final cl_command_queue queue;
+
+    private final ByteBuffer host;
+
+    private final DirtyRanges hostDirty;
+
+    private final DirtyRanges deviceDirty;
+
+    /**
+     * Wraps the buffer and the host mirror. Takes the ownership of the buffer.
+     *
+     * @param buffer the {@link Buffer}.
+     * @param queue  the {@link cl_command_queue} of the transfers.
+     * @param host   the direct {@link ByteBuffer} host mirror with the size of
+     *               the buffer.
+     */
+    public MirroredBuffer(Buffer buffer, cl_command_queue queue, ByteBuffer host) {
+        isTrue(host.isDirect(), "Host mirror must be a direct buffer");
+        this.buffer = buffer;
+        this.queue = queue;
+        this.host = host.order(ByteOrder.nativeOrder());
+        this.hostDirty = new DirtyRanges(DEFAULT_MERGE_GAP);
+        this.deviceDirty = new DirtyRanges(DEFAULT_MERGE_GAP);
+        log.debug("Created mirrored buffer {}", this);
+    }
+
+    /**
+     * Sets the largest gap in bytes between two dirty ranges that are
+     * transferred as one range.
+     */
+    public void setMergeGap(long mergeGap) {
+        hostDirty.setMergeGap(mergeGap);
+        deviceDirty.setMergeGap(mergeGap);
+    }
+
+    /**
+     * Returns the host mirror in the native byte order. Changes made through
+     * the returned buffer must be recorded with {@link #markDirty(long, long)}.
+     */
+    public ByteBuffer getHost() {
+        return host.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Records that the host mirror changed in the region.
+     */
+    public void markDirty(long offset, long size) {
+        hostDirty.add(offset, offset + size);
+    }
+
+    /**
+     * Records that a kernel writes the region of the buffer.
+     */
+    public void markDeviceWritten(long offset, long size) {
+        deviceDirty.add(offset, offset + size);
+    }
+
+    public MirroredBuffer putInt(int offset, int value) {
+        host.putInt(offset, value);
+        hostDirty.add(offset, offset + Integer.BYTES);
+        return this;
+    }
+
+    public MirroredBuffer putLong(int offset, long value) {
+        host.putLong(offset, value);
+        hostDirty.add(offset, offset + Long.BYTES);
+        return this;
+    }
+
+    public MirroredBuffer putFloat(int offset, float value) {
+        host.putFloat(offset, value);
+        hostDirty.add(offset, offset + Float.BYTES);
+        return this;
+    }
+
+    public MirroredBuffer putDouble(int offset, double value) {
+        host.putDouble(offset, value);
+        hostDirty.add(offset, offset + Double.BYTES);
+        return this;
+    }
+
+    public MirroredBuffer put(int offset, byte[] src) {
+        host.duplicate().position(offset).put(src);
+        hostDirty.add(offset, offset + src.length);
+        return this;
+    }
+
+    /**
+     * Uploads the dirty ranges of the host mirror. Blocks until all ranges are
+     * written.
+     *
+     * @return the number of write commands.
+     */
+    public int sync() {
+        var count = transfer(hostDirty, true);
+        hostDirty.clear();
+        return count;
+    }
+
+    /**
+     * Downloads the ranges that were declared as written by kernels. Blocks
+     * until all ranges are read.
+     *
+     * @return the number of read commands.
+     */
+    public int syncFromDevice() {
+        var count = transfer(deviceDirty, false);
+        deviceDirty.clear();
+        return count;
+    }
+
+    private int transfer(DirtyRanges ranges, boolean upload) {
+        if (ranges.isEmpty()) {
+            return 0;
+        }
+        var pointer = Pointer.toBuffer(host);
+        var events = new ArrayList<Event>(ranges.size());
+        try {
+            ranges.forEach((from, to) -> {
+                var p = pointer.withByteOffset(from);
+                if (upload) {
+                    events.add(buffer.writeAsync(queue, from, to - from, p));
+                } else {
+                    events.add(buffer.readAsync(queue, from, to - from, p));
+                }
+            });
+        } finally {
+            for (var event : events) {
+                try (event) {
+                    event.waitFor();
+                }
+            }
+        }
+        log.trace("Transferred {} ranges of {}", events.size(), this);
+        return events.size();
+    }
+
+    public DirtyRanges getHostDirty() {
+        return hostDirty;
+    }
+
+    public DirtyRanges getDeviceDirty() {
+        return deviceDirty;
+    }
+
+    public Buffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public cl_mem get() {
+        return buffer.get();
+    }
+
+    @Override
+    public void close() throws Exception {
+        buffer.close();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("buffer", buffer).append("size", host.capacity()).build();
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.anrisoftware.easycl.corejocl;
 
+import static org.apache.commons.lang3.Validate.isTrue;
+
 import lombok.Data;
 
 /**
@@ -35,14 +37,72 @@ public class NDRange {
     }
 
     public static NDRange d2Range(long size0, long size1) {
-        return new NDRange(1, new long[] { size0, size1, 1 });
+        return new NDRange(2, new long[] { size0, size1, 1 });
     }
 
     public static NDRange d3Range(long size0, long size1, long size2) {
-        return new NDRange(1, new long[] { size0, size1, size2 });
+        return new NDRange(3, new long[] { size0, size1, size2 });
+    }
+
+    /**
+     * Returns the range with one to three dimensions.
+     *
+     * @param sizes the size of each dimension.
+     */
+    public static NDRange of(long... sizes) {
+        isTrue(sizes.length >= 1 && sizes.length <= 3, "Invalid number of dimensions %d", sizes.length);
+        var s = new long[] { 1, 1, 1 };
+        System.arraycopy(sizes, 0, s, 0, sizes.length);
+        return new NDRange(sizes.length, s);
+    }
+
+    /**
+     * Returns the size rounded up to the next multiple.
+     */
+    public static long roundUp(long size, long multiple) {
+        isTrue(multiple > 0, "Invalid multiple %d", multiple);
+        long r = size % multiple;
+        return r == 0 ? size : size + multiple - r;
     }
 
     public final int dims;
 
     public final long[] sizes;
+
+    /**
+     * Returns the size of the dimension.
+     */
+    public long getSize(int dim) {
+        return sizes[dim];
+    }
+
+    /**
+     * Returns the number of work-items of the range.
+     */
+    public long getTotal() {
+        long total = 1;
+        for (int i = 0; i < dims; i++) {
+            total *= sizes[i];
+        }
+        return dims == 0 ? 0 : total;
+    }
+
+    /**
+     * Returns the range with each dimension rounded up to a multiple of the
+     * local size. Returns this range if the local size is
+     * {@link #d0Range()}, that is chosen by the driver.
+     *
+     * @param local the local work size.
+     */
+    public NDRange roundUp(NDRange local) {
+        if (local.dims == 0) {
+            return this;
+        }
+        isTrue(local.dims == dims, "Local range has %d dimensions but the range has %d", local.dims, dims);
+        var s = new long[] { 1, 1, 1 };
+        for (int i = 0; i < dims; i++) {
+            s[i] = roundUp(sizes[i], local.sizes[i]);
+        }
+        return new NDRange(dims, s);
+    }
 }
@@ -0,0 +1,141 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Argument of a {@link Kernel} that was looked up by its name. The name is
+ * resolved to the index once when the argument is created with
+ * {@link Kernel#arg(String)}, so the setters cost the same as the index based
+ * setters of the kernel.
+ *
+ * <pre>
+ * def input = kernel.arg("input")
+ * def factor = kernel.arg("factor")
+ * for (batch in batches) {
+ *     input.set(batch)
+ *     factor.set(2f)
+ *     kernel.call()
+ * }
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public class NamedArg {
+
+    private final Kernel kernel;
+
+    private final String name;
+
+    private final int index;
+
+    NamedArg(Kernel kernel, String name, int index) {
+        this.kernel = kernel;
+        this.name = name;
+        this.index = index;
+    }
+
+    public NamedArg set(byte v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(char v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(double v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(float v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(int v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(long v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(short v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(Buffer v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(HostSegment v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(Image v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(Sampler v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(SvmBuffer v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    public NamedArg set(CommandQueue v) {
+        kernel.set(index, v);
+        return this;
+    }
+
+    /**
+     * Sets the size in bytes of the <code>__local</code> memory argument.
+     */
+    public NamedArg setLocal(long bytes) {
+        kernel.setLocal(index, bytes);
+        return this;
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("name", name).append("index", index).build();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.validState;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link Buffer} that is returned to the {@link PooledBufferFactory} on close
+ * instead of being released.
+ * <p>
+ * The memory object is reused by the next buffer of the same size class, so
+ * commands that still use the buffer must be enqueued on the same in-order
+ * queue as the commands of the next user.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class PooledBuffer extends Buffer {
+
+    private final PooledBufferFactory factory;
+
+    private final BufferPool pool;
+
+    private final long flags;
+
+    private final long size;
+
+    private final long sizeClass;
+
+    PooledBuffer(PooledBufferFactory factory, BufferPool pool, cl_context context, cl_mem mem, long flags,
+            long size, long sizeClass) {
+        super(context, mem);
+        this.factory = factory;
+        this.pool = pool;
+        this.flags = flags;
+        this.size = size;
+        this.sizeClass = sizeClass;
+    }
+
+    /**
+     * Returns the requested size of the buffer. The memory object can be larger.
+     */
+    @Override
+    public long retrieveSize() {
+        return size;
+    }
+
+    /**
+     * Returns the size of the pooled memory object.
+     */
+    public long getSizeClass() {
+        return sizeClass;
+    }
+
+    BufferPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public void close() throws Exception {
+        validState(getOpenSlices() == 0, "Pooled buffer has %d open slices", getOpenSlices());
+        var mem = detach();
+        if (mem == null) {
+            return;
+        }
+        pool.release(flags, sizeClass, mem, factory.getHighWaterMark());
+        log.trace("Buffer returned to pool {}", this);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).appendSuper(super.toString()).append("size", size)
+                .append("sizeClass", sizeClass).build();
+    }
+}
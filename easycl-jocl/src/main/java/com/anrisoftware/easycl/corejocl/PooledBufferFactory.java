@@ -0,0 +1,232 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.jocl.CL.CL_MEM_READ_ONLY;
+import static org.jocl.CL.CL_MEM_READ_WRITE;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_mem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link BufferFactory} that reuses memory objects from per-context free lists.
+ * <p>
+ * The requested sizes are rounded up to size classes and the returned
+ * {@link PooledBuffer} goes back to the free list on close. Idle memory above
+ * the high-water mark is released to the driver. Buffers that use a host
+ * pointer are not pooled and are created by the default {@link BufferFactory}.
+ *
+ * <pre>
+ * &#64;Inject
+ * PooledBufferFactory bufferFactory
+ *
+ * def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, size)
+ * buffer.withCloseable {
+ *     // ...
+ * }
+ * assert bufferFactory.statistics.idleBuffers == 1
+ * </pre>
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+@Singleton
+public class PooledBufferFactory implements BufferFactory {
+
+    /**
+     * The default high-water mark of idle memory per context, 256 MiB.
+     */
+    public static final long DEFAULT_HIGH_WATER_MARK = 256L * 1024 * 1024;
+
+    private final BufferFactory bufferFactory;
+
+    private final Map<cl_context, BufferPool> pools;
+
+    private volatile long highWaterMark;
+
+    @Inject
+    public PooledBufferFactory(BufferFactory bufferFactory) {
+        this.bufferFactory = bufferFactory;
+        this.pools = new ConcurrentHashMap<>();
+        this.highWaterMark = DEFAULT_HIGH_WATER_MARK;
+    }
+
+    /**
+     * Sets the maximum size in bytes of idle memory that is kept per context.
+     * Trims the free lists if they are above the new high-water mark.
+     */
+    public void setHighWaterMark(long highWaterMark) {
+        isTrue(highWaterMark >= 0, "High-water mark must not be negative");
+        this.highWaterMark = highWaterMark;
+        pools.values().forEach(p -> p.trim(highWaterMark));
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Releases all idle memory objects of all contexts.
+     */
+    public void trim() {
+        pools.values().forEach(p -> p.trim(0));
+    }
+
+    /**
+     * Releases all idle memory objects of the context and closes its pool. The
+     * memory objects of buffers that are still in use are released when the
+     * buffers are closed. Must be called before the context is released.
+     */
+    public void trim(Supplier<cl_context> context) {
+        var pool = pools.remove(context.get());
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Returns the statistics summed over all contexts.
+     */
+    public BufferPoolStatistics getStatistics() {
+        var s = new BufferPoolStatistics(0, 0, 0, 0, 0);
+        for (var pool : pools.values()) {
+            s = s.add(pool.getStatistics());
+        }
+        return s;
+    }
+
+    /**
+     * Returns the statistics of the context.
+     */
+    public BufferPoolStatistics getStatistics(Supplier<cl_context> context) {
+        var pool = pools.get(context.get());
+        return pool == null ? new BufferPoolStatistics(0, 0, 0, 0, 0) : pool.getStatistics();
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, long flags, long size) {
+        return acquire(context.get(), flags, size);
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, long flags, long size, Pointer ptr) {
+        if (ptr == null) {
+            return acquire(context.get(), flags, size);
+        }
+        return bufferFactory.create(context, flags, size, ptr);
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, ByteBuffer buffer,
+            boolean readOnly, boolean useHostPtr) {
+        if (useHostPtr) {
+            return bufferFactory.create(context, queue, buffer, readOnly, useHostPtr);
+        }
+        return acquire(context.get(), queue.get(), buffer, Sizeof.cl_char, readOnly);
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, CharBuffer buffer,
+            boolean readOnly, boolean useHostPtr) {
+        if (useHostPtr) {
+            return bufferFactory.create(context, queue, buffer, readOnly, useHostPtr);
+        }
+        return acquire(context.get(), queue.get(), buffer, Sizeof.cl_short, readOnly);
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue,
+            DoubleBuffer buffer, boolean readOnly, boolean useHostPtr) {
+        if (useHostPtr) {
+            return bufferFactory.create(context, queue, buffer, readOnly, useHostPtr);
+        }
+        return acquire(context.get(), queue.get(), buffer, Sizeof.cl_double, readOnly);
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue,
+            FloatBuffer buffer, boolean readOnly, boolean useHostPtr) {
+        if (useHostPtr) {
+            return bufferFactory.create(context, queue, buffer, readOnly, useHostPtr);
+        }
+        return acquire(context.get(), queue.get(), buffer, Sizeof.cl_float, readOnly);
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, IntBuffer buffer,
+            boolean readOnly, boolean useHostPtr) {
+        if (useHostPtr) {
+            return bufferFactory.create(context, queue, buffer, readOnly, useHostPtr);
+        }
+        return acquire(context.get(), queue.get(), buffer, Sizeof.cl_int, readOnly);
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, LongBuffer buffer,
+            boolean readOnly, boolean useHostPtr) {
+        if (useHostPtr) {
+            return bufferFactory.create(context, queue, buffer, readOnly, useHostPtr);
+        }
+        return acquire(context.get(), queue.get(), buffer, Sizeof.cl_long, readOnly);
+    }
+
+    @Override
+    public Supplier<cl_mem> create(Supplier<cl_context> context, Supplier<cl_command_queue> queue,
+            ShortBuffer buffer, boolean readOnly, boolean useHostPtr) {
+        if (useHostPtr) {
+            return bufferFactory.create(context, queue, buffer, readOnly, useHostPtr);
+        }
+        return acquire(context.get(), queue.get(), buffer, Sizeof.cl_short, readOnly);
+    }
+
+    private PooledBuffer acquire(cl_context context, cl_command_queue queue, java.nio.Buffer src, long sizeType,
+            boolean readOnly) {
+        var flags = readOnly ? CL_MEM_READ_ONLY : CL_MEM_READ_WRITE;
+        var size = sizeType * src.capacity();
+        var buffer = acquire(context, flags, size);
+        buffer.write(queue, 0, size, src);
+        return buffer;
+    }
+
+    private PooledBuffer acquire(cl_context context, long flags, long size) {
+        var pool = pools.computeIfAbsent(context, BufferPool::new);
+        var sizeClass = BufferPool.sizeClass(size);
+        var mem = pool.acquire(flags, sizeClass);
+        var buffer = new PooledBuffer(this, pool, context, mem, flags, size, sizeClass);
+        log.trace("Acquired pooled buffer {}", buffer);
+        return buffer;
+    }
+}
@@ -17,6 +17,7 @@ package com.anrisoftware.easycl.corejocl;
 
 import static org.apache.commons.lang3.Validate.isTrue;
 import static org.jocl.CL.CL_PROGRAM_CONTEXT;
+import static org.jocl.CL.CL_PROGRAM_SOURCE;
 import static org.jocl.CL.clBuildProgram;
 import static org.jocl.CL.clCompileProgram;
 import static org.jocl.CL.clCreateProgramWithSource;
@@ -24,6 +25,7 @@ import static org.jocl.CL.clGetProgramInfo;
 import static org.jocl.CL.clLinkProgram;
 import static org.jocl.CL.clReleaseProgram;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.function.Supplier;
 
@@ -170,6 +172,28 @@ public class Program implements HaveContext, HaveName, Supplier<cl_program>, Aut
         return c;
     }
 
+    /**
+     * Returns the source code of the program.
+     */
+    public String retrieveSource() {
+        return retrieveSource(program);
+    }
+
+    /**
+     * Returns the source code of the specified program, or an empty string if
+     * the program was not created from source.
+     */
+    public static String retrieveSource(cl_program program) {
+        long[] size = { 0 };
+        clGetProgramInfo(program, CL_PROGRAM_SOURCE, 0, null, size);
+        if (size[0] <= 1) {
+            return "";
+        }
+        var buffer = new byte[(int) size[0]];
+        clGetProgramInfo(program, CL_PROGRAM_SOURCE, size[0], Pointer.to(buffer), null);
+        return new String(buffer, 0, buffer.length - 1, StandardCharsets.UTF_8);
+    }
+
     public boolean isCompiled() {
         return compiled;
     }
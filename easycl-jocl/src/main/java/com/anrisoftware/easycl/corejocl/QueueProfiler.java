@@ -0,0 +1,232 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.jocl.CL.CL_COMPLETE;
+import static org.jocl.CL.CL_PROFILING_COMMAND_END;
+import static org.jocl.CL.CL_PROFILING_COMMAND_QUEUED;
+import static org.jocl.CL.CL_PROFILING_COMMAND_START;
+import static org.jocl.CL.CL_PROFILING_COMMAND_SUBMIT;
+import static org.jocl.CL.clGetEventProfilingInfo;
+import static org.jocl.CL.clReleaseEvent;
+import static org.jocl.CL.clRetainEvent;
+import static org.jocl.CL.clSetEventCallback;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.Pointer;
+import org.jocl.Sizeof;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_event;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects the profiling information of the commands of a {@link CommandQueue}
+ * that was created with profiling enabled.
+ * <p>
+ * The kernel launches are recorded with the name of the kernel and the buffer
+ * transfers with the names <code>read</code>, <code>write</code>,
+ * <code>fill</code>, <code>copy</code>, <code>readRect</code>,
+ * <code>writeRect</code> and <code>copyRect</code>. The image transfers are
+ * recorded as <code>readImage</code>, <code>writeImage</code> and
+ * <code>mapImage</code>, the mappings as <code>map</code>,
+ * <code>unmap</code>, <code>svmMap</code> and <code>svmUnmap</code>, and the
+ * transfers of a spilled {@link ManagedBuffer} as <code>spill</code> and
+ * <code>restore</code>. For each name the profiler keeps a
+ * {@link LatencyHistogram} of the time until the command is submitted to the
+ * device, of the time that the command waits in the queue,
+ * from <code>CL_PROFILING_COMMAND_QUEUED</code> to
+ * <code>CL_PROFILING_COMMAND_START</code>, and a histogram of the execution
+ * time, from <code>CL_PROFILING_COMMAND_START</code> to
+ * <code>CL_PROFILING_COMMAND_END</code>. The timestamps are read in the
+ * completion callback of the command, so recording does not block the caller.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class QueueProfiler {
+
+    private static final Map<cl_command_queue, QueueProfiler> profilers = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the profiler of the queue or <code>null</code> if the queue is
+     * not profiled.
+     */
+    public static QueueProfiler forQueue(cl_command_queue queue) {
+        if (queue == null || profilers.isEmpty()) {
+            return null;
+        }
+        return profilers.get(queue);
+    }
+
+    /**
+     * Returns a new event for a command that does not return an event, if the
+     * queue is profiled.
+     *
+     * @return the {@link cl_event} or <code>null</code> if the queue is not
+     *         profiled.
+     */
+    static cl_event event(cl_command_queue queue) {
+        return forQueue(queue) != null ? new cl_event() : null;
+    }
+
+    /**
+     * Records the command of the event that was created with
+     * {@link #event(cl_command_queue)}. Releases the event after it is
+     * recorded.
+     */
+    static void recordOwned(cl_command_queue queue, String name, cl_event event) {
+        if (event == null) {
+            return;
+        }
+        var profiler = forQueue(queue);
+        if (profiler == null) {
+            clReleaseEvent(event);
+            return;
+        }
+        profiler.record(name, event);
+    }
+
+    /**
+     * Records the command of the event that is owned by the caller, if the
+     * queue is profiled.
+     */
+    static void record(cl_command_queue queue, String name, cl_event event) {
+        var profiler = forQueue(queue);
+        if (profiler == null) {
+            return;
+        }
+        clRetainEvent(event);
+        profiler.record(name, event);
+    }
+
+    /**
+     * Latencies of the commands with the same name.
+     *
+     * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+     */
+    public static class Latencies {
+
+        private final LatencyHistogram submitDelay = new LatencyHistogram();
+
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+
+        private final LatencyHistogram execution = new LatencyHistogram();
+
+        /**
+         * Returns the time from enqueue to the submission to the device.
+         */
+        public LatencyHistogram getSubmitDelay() {
+            return submitDelay;
+        }
+
+        /**
+         * Returns the time from enqueue to start.
+         */
+        public LatencyHistogram getQueueWait() {
+            return queueWait;
+        }
+
+        /**
+         * Returns the time from start to end.
+         */
+        public LatencyHistogram getExecution() {
+            return execution;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this).append("queueWait", queueWait).append("execution", execution).build();
+        }
+    }
+
+    private final cl_command_queue queue;
+
+    private final Map<String, Latencies> latencies;
+
+    QueueProfiler(cl_command_queue queue) {
+        this.queue = queue;
+        this.latencies = new ConcurrentHashMap<>();
+    }
+
+    void register() {
+        profilers.put(queue, this);
+    }
+
+    void unregister() {
+        profilers.remove(queue);
+    }
+
+    private void record(String name, cl_event event) {
+        clSetEventCallback(event, CL_COMPLETE, (e, status, data) -> completed(name, e, status), null);
+    }
+
+    private void completed(String name, cl_event event, int status) {
+        try {
+            if (status < 0) {
+                return;
+            }
+            long queued = retrieveTime(event, CL_PROFILING_COMMAND_QUEUED);
+            long submit = retrieveTime(event, CL_PROFILING_COMMAND_SUBMIT);
+            long start = retrieveTime(event, CL_PROFILING_COMMAND_START);
+            long end = retrieveTime(event, CL_PROFILING_COMMAND_END);
+            var l = getLatencies(name);
+            l.submitDelay.record(submit - queued);
+            l.queueWait.record(start - queued);
+            l.execution.record(end - start);
+        } catch (RuntimeException ex) {
+            log.warn("Error read profiling info of {}", name, ex);
+        } finally {
+            clReleaseEvent(event);
+        }
+    }
+
+    private static long retrieveTime(cl_event event, int param) {
+        long[] value = { 0 };
+        clGetEventProfilingInfo(event, param, Sizeof.cl_ulong, Pointer.to(value), null);
+        return value[0];
+    }
+
+    /**
+     * Returns the latencies of the commands with the name.
+     */
+    public Latencies getLatencies(String name) {
+        return latencies.computeIfAbsent(name, n -> new Latencies());
+    }
+
+    /**
+     * Returns the names of the recorded commands.
+     */
+    public Set<String> getNames() {
+        return latencies.keySet();
+    }
+
+    /**
+     * Removes all recorded latencies.
+     */
+    public void reset() {
+        latencies.clear();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("queue", queue).append("names", latencies.keySet()).build();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.jocl.CL.CL_FALSE;
+import static org.jocl.CL.CL_SAMPLER_ADDRESSING_MODE;
+import static org.jocl.CL.CL_SAMPLER_FILTER_MODE;
+import static org.jocl.CL.CL_SAMPLER_NORMALIZED_COORDS;
+import static org.jocl.CL.CL_TRUE;
+import static org.jocl.CL.clCreateSamplerWithProperties;
+import static org.jocl.CL.clReleaseSampler;
+
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.cl_context;
+import org.jocl.cl_sampler;
+import org.jocl.cl_sampler_properties;
+
+import com.google.inject.assistedinject.Assisted;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Wrapper around {@link cl_sampler}.
+ *
+ * @see SamplerFactory
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class Sampler implements HaveContext, Supplier<cl_sampler>, AutoCloseable {
+
+    private final cl_context context;
+
+    private cl_sampler sampler;
+
+    @Inject
+    public Sampler(@Assisted Supplier<cl_context> context, @Assisted("normalizedCoords") boolean normalizedCoords,
+            @Assisted("addressingMode") int addressingMode, @Assisted("filterMode") int filterMode) {
+        this.context = context.get();
+        var properties = new cl_sampler_properties();
+        properties.addProperty(CL_SAMPLER_NORMALIZED_COORDS, normalizedCoords ? CL_TRUE : CL_FALSE);
+        properties.addProperty(CL_SAMPLER_ADDRESSING_MODE, addressingMode);
+        properties.addProperty(CL_SAMPLER_FILTER_MODE, filterMode);
+        this.sampler = clCreateSamplerWithProperties(this.context, properties, null);
+        log.debug("Created sampler {}", this);
+    }
+
+    @Override
+    public cl_context getContext() {
+        return context;
+    }
+
+    @Override
+    public cl_sampler get() {
+        return sampler;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (sampler == null) {
+            return;
+        }
+        clReleaseSampler(sampler);
+        log.trace("Sampler released {}", this);
+        sampler = null;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("id", sampler).build();
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import java.util.function.Supplier;
+
+import org.jocl.cl_context;
+import org.jocl.cl_sampler;
+
+import com.google.inject.assistedinject.Assisted;
+
+/**
+ * Factory to create a new {@link Supplier} that supplies a {@link cl_sampler}.
+ *
+ * @see Sampler
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public interface SamplerFactory {
+
+    /**
+     * Creates a new {@link Supplier} that supplies a {@link cl_sampler}.
+     *
+     * @param context          the {@link Supplier} that supplies the
+     *                         {@link cl_context}.
+     * @param normalizedCoords set to <code>true</code> if the image coordinates
+     *                         are normalized.
+     * @param addressingMode   the addressing mode, for example
+     *                         {@link org.jocl.CL#CL_ADDRESS_CLAMP_TO_EDGE}.
+     * @param filterMode       the filter mode, for example
+     *                         {@link org.jocl.CL#CL_FILTER_LINEAR}.
+     */
+    Supplier<cl_sampler> create(@Assisted Supplier<cl_context> context,
+            @Assisted("normalizedCoords") boolean normalizedCoords, @Assisted("addressingMode") int addressingMode,
+            @Assisted("filterMode") int filterMode);
+}
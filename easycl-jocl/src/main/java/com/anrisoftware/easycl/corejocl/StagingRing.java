@@ -0,0 +1,254 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.validState;
+import static org.jocl.CL.CL_MAP_WRITE;
+import static org.jocl.CL.CL_MEM_READ_ONLY;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+
+import com.google.inject.assistedinject.Assisted;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ring of reusable host staging buffers for uploads to the device on one
+ * queue.
+ * <p>
+ * A producer acquires the next slot, fills its host buffer and uploads it with
+ * a non-blocking write. While the slot uploads the producer fills the next
+ * slot, and kernels can already consume the data of earlier uploads. If the
+ * ring is full then {@link #acquire()} blocks until the upload of the oldest
+ * slot is completed.
+ * <p>
+ * The host buffers are either direct buffers or, if the ring is pinned,
+ * persistently mapped buffers created with
+ * {@link org.jocl.CL#CL_MEM_ALLOC_HOST_PTR}.
+ *
+ * <pre>
+ * def ring = stagingRingFactory.create(context, queue, 3, 16 * 1024 * 1024, true)
+ * ring.withCloseable {
+ *     for (batch in batches) {
+ *         def slot = ring.acquire()
+ *         slot.buffer.put(batch)
+ *         def uploaded = slot.upload(dest, 0, batch.length)
+ *         kernel.enqueue(new EnqueueArgs(queue.get(), global)).call()
+ *     }
+ * }
+ * </pre>
+ *
+ * @see StagingRingFactory
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class StagingRing implements AutoCloseable {
+
+    /**
+     * Slot of the {@link StagingRing}.
+     *
+     * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+     */
+    public class Slot {
+
+        private final int index;
+
+        private final ByteBuffer buffer;
+
+        private Event upload;
+
+        private boolean filling;
+
+        private Slot(int index, ByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns the host buffer of the slot with the position set to zero and
+         * the limit set to the slot size.
+         */
+        public ByteBuffer getBuffer() {
+            return buffer.duplicate().clear().order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * Enqueues a non-blocking write of the host buffer to the destination
+         * buffer and hands the slot back to the ring.
+         * <p>
+         * The returned event is owned by the ring and stays valid until the slot
+         * is acquired again, so it must not be closed by the caller.
+         *
+         * @param dest       the destination {@link Buffer}.
+         * @param destOffset the offset in bytes in the destination buffer.
+         * @param size       the size in bytes to upload.
+         * @param waitList   the {@link Event}s that must complete before the
+         *                   upload.
+         * @return the {@link Event} of the upload.
+         */
+        public Event upload(Buffer dest, long destOffset, long size, Event... waitList) {
+            isTrue(size <= slotSize, "Size %d is larger than the slot size %d", size, slotSize);
+            validState(filling, "Slot is not acquired");
+            var event = dest.writeAsync(queue, destOffset, size, buffer, waitList);
+            synchronized (StagingRing.this) {
+                upload = event;
+                filling = false;
+                StagingRing.this.notifyAll();
+            }
+            return event;
+        }
+
+        /**
+         * Hands the slot back to the ring without an upload.
+         */
+        public void release() {
+            synchronized (StagingRing.this) {
+                filling = false;
+                StagingRing.this.notifyAll();
+            }
+        }
+
+        private void awaitUpload() {
+            Event event;
+            synchronized (StagingRing.this) {
+                event = upload;
+                upload = null;
+            }
+            if (event != null) {
+                try (event) {
+                    event.waitFor();
+                }
+            }
+        }
+
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    private final cl_command_queue queue;
+
+    private final long slotSize;
+
+    private final Slot[] slots;
+
+    private final Buffer[] pinnedBuffers;
+
+    private final MappedBuffer[] pinnedMappings;
+
+    private int next;
+
+    private boolean closed;
+
+    /**
+     * Creates the staging ring.
+     *
+     * @param bufferFactory the {@link BufferFactory} for pinned host buffers.
+     * @param context       the {@link Supplier} that supplies the
+     *                      {@link cl_context}.
+     * @param queue         the {@link Supplier} that supplies the
+     *                      {@link cl_command_queue} of the uploads.
+     * @param slots         the number of slots, at least two.
+     * @param slotSize      the size in bytes of each slot.
+     * @param pinned        set to <code>true</code> to use mapped
+     *                      {@link org.jocl.CL#CL_MEM_ALLOC_HOST_PTR} buffers
+     *                      instead of direct buffers.
+     */
+    @Inject
+    public StagingRing(BufferFactory bufferFactory, @Assisted Supplier<cl_context> context,
+            @Assisted Supplier<cl_command_queue> queue, @Assisted("slots") int slots,
+            @Assisted("slotSize") long slotSize, @Assisted("pinned") boolean pinned) {
+        isTrue(slots >= 2, "Ring needs at least two slots");
+        isTrue(slotSize > 0 && slotSize <= Integer.MAX_VALUE, "Invalid slot size %d", slotSize);
+        this.queue = queue.get();
+        this.slotSize = slotSize;
+        this.slots = new Slot[slots];
+        this.pinnedBuffers = new Buffer[pinned ? slots : 0];
+        this.pinnedMappings = new MappedBuffer[pinned ? slots : 0];
+        for (int i = 0; i < slots; i++) {
+            ByteBuffer host;
+            if (pinned) {
+                pinnedBuffers[i] = (Buffer) Buffer.allocHostPtr(bufferFactory, context, CL_MEM_READ_ONLY, slotSize);
+                pinnedMappings[i] = pinnedBuffers[i].map(this.queue, CL_MAP_WRITE, 0, slotSize);
+                host = pinnedMappings[i].get();
+            } else {
+                host = ByteBuffer.allocateDirect((int) slotSize).order(ByteOrder.nativeOrder());
+            }
+            this.slots[i] = new Slot(i, host);
+        }
+        log.debug("Created staging ring {}", this);
+    }
+
+    /**
+     * Returns the next slot of the ring. Blocks while the slot is filled by
+     * another producer or while its last upload is not completed.
+     */
+    public Slot acquire() throws InterruptedException {
+        Slot slot;
+        synchronized (this) {
+            validState(!closed, "Staging ring is closed");
+            slot = slots[next];
+            next = (next + 1) % slots.length;
+            while (slot.filling) {
+                wait();
+            }
+            slot.filling = true;
+        }
+        slot.awaitUpload();
+        return slot;
+    }
+
+    public long getSlotSize() {
+        return slotSize;
+    }
+
+    public int getSlots() {
+        return slots.length;
+    }
+
+    @Override
+    public void close() throws Exception {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        for (var slot : slots) {
+            slot.awaitUpload();
+        }
+        for (int i = 0; i < pinnedBuffers.length; i++) {
+            pinnedMappings[i].close();
+            pinnedBuffers[i].close();
+        }
+        log.trace("Staging ring released {}", this);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("queue", queue).append("slots", slots.length)
+                .append("slotSize", slotSize).append("pinned", pinnedBuffers.length > 0).build();
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import java.util.function.Supplier;
+
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+
+import com.google.inject.assistedinject.Assisted;
+
+/**
+ * Factory to create a new {@link StagingRing} for uploads on the specified
+ * queue.
+ *
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public interface StagingRingFactory {
+
+    /**
+     * Creates a new {@link StagingRing}.
+     *
+     * @param context  the {@link Supplier} that returns the {@link cl_context}.
+     * @param queue    the {@link Supplier} that returns the
+     *                 {@link cl_command_queue}.
+     * @param slots    the number of slots, at least two.
+     * @param slotSize the size in bytes of each slot.
+     * @param pinned   set to <code>true</code> to use mapped
+     *                 {@link org.jocl.CL#CL_MEM_ALLOC_HOST_PTR} buffers.
+     */
+    StagingRing create(Supplier<cl_context> context, Supplier<cl_command_queue> queue, @Assisted("slots") int slots,
+            @Assisted("slotSize") long slotSize, @Assisted("pinned") boolean pinned);
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import static org.apache.commons.lang3.Validate.validState;
+import static org.jocl.CL.CL_BLOCKING;
+import static org.jocl.CL.CL_MEM_SVM_FINE_GRAIN_BUFFER;
+import static org.jocl.CL.clEnqueueSVMMap;
+import static org.jocl.CL.clEnqueueSVMUnmap;
+import static org.jocl.CL.clSVMAlloc;
+import static org.jocl.CL.clSVMFree;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jocl.Pointer;
+import org.jocl.cl_command_queue;
+import org.jocl.cl_context;
+import org.jocl.cl_event;
+
+import com.google.inject.assistedinject.Assisted;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Wrapper around a shared virtual memory allocation from
+ * <code>clSVMAlloc</code>.
+ * <p>
+ * The host and the device use the same addresses, so pointer-rich structures
+ * can be shared without serialization. Coarse-grained allocations must be
+ * mapped before the host accesses them and unmapped before a kernel uses them.
+ * Fine-grained allocations, created with
+ * {@link org.jocl.CL#CL_MEM_SVM_FINE_GRAIN_BUFFER}, can be accessed with
+ * {@link #getByteBuffer()} at any time. Check
+ * {@link Device#retrieveSvmCapabilities()} for the supported modes.
+ *
+ * <pre>
+ * def svm = svmBufferFactory.create(context, CL_MEM_READ_WRITE, size)
+ * def host = svm.map(queue.get(), CL_MAP_WRITE)
+ * host.putFloat(0, 1f)
+ * svm.unmap(queue.get()).close()
+ * kernel.set(0, svm)
+ * </pre>
+ *
+ * @see SvmBufferFactory
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+@Slf4j
+public class SvmBuffer implements HaveContext, Supplier<Pointer>, AutoCloseable {
+
+    private final cl_context context;
+
+    private final long flags;
+
+    private final long size;
+
+    private Pointer svm;
+
+    private boolean mapped;
+
+    /**
+     * Allocates the shared virtual memory.
+     *
+     * @param context the {@link Supplier} that supplies the {@link cl_context}.
+     * @param flags   the memory flags, for example
+     *                {@link org.jocl.CL#CL_MEM_READ_WRITE} for a
+     *                coarse-grained allocation or together with
+     *                {@link org.jocl.CL#CL_MEM_SVM_FINE_GRAIN_BUFFER} for a
+     *                fine-grained allocation.
+     * @param size    the size in bytes.
+     */
+    @Inject
+    public SvmBuffer(@Assisted Supplier<cl_context> context, @Assisted("flags") long flags,
+            @Assisted("size") long size) {
+        this.context = context.get();
+        this.flags = flags;
+        this.size = size;
+        this.svm = clSVMAlloc(this.context, flags, size, 0);
+        validState(svm != null, "Shared virtual memory allocation of %d bytes failed", size);
+        log.debug("Created SVM buffer {}", this);
+    }
+
+    public boolean isFineGrained() {
+        return (flags & CL_MEM_SVM_FINE_GRAIN_BUFFER) != 0;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Maps the whole allocation into the host memory. Blocks until the
+     * allocation is mapped.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param mapFlags the map flags, for example
+     *                 {@link org.jocl.CL#CL_MAP_WRITE}.
+     * @param waitList the {@link Event}s that must complete before the map.
+     * @return the {@link ByteBuffer} of the mapped allocation.
+     */
+    public ByteBuffer map(cl_command_queue queue, long mapFlags, Event... waitList) {
+        validState(!mapped, "SVM buffer is already mapped");
+        var event = QueueProfiler.event(queue);
+        clEnqueueSVMMap(queue, CL_BLOCKING, mapFlags, svm, size, Event.waitListSize(waitList),
+                Event.toWaitList(waitList), event);
+        QueueProfiler.recordOwned(queue, "svmMap", event);
+        mapped = true;
+        return getByteBuffer();
+    }
+
+    /**
+     * Enqueues the unmap command. The host must not access the allocation after
+     * the unmap until it is mapped again.
+     *
+     * @param queue    the {@link cl_command_queue}.
+     * @param waitList the {@link Event}s that must complete before the unmap.
+     * @return the {@link Event} of the unmap command.
+     */
+    public Event unmap(cl_command_queue queue, Event... waitList) {
+        validState(mapped, "SVM buffer is not mapped");
+        var event = new cl_event();
+        clEnqueueSVMUnmap(queue, svm, Event.waitListSize(waitList), Event.toWaitList(waitList), event);
+        QueueProfiler.record(queue, "svmUnmap", event);
+        mapped = false;
+        return new Event(event);
+    }
+
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Returns the host view of the allocation in the native byte order. For
+     * coarse-grained allocations the view is only valid while the allocation
+     * is mapped.
+     */
+    public ByteBuffer getByteBuffer() {
+        validState(svm != null, "SVM buffer is closed");
+        return svm.getByteBuffer(0, size).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public cl_context getContext() {
+        return context;
+    }
+
+    @Override
+    public Pointer get() {
+        return svm;
+    }
+
+    /**
+     * Frees the allocation. All commands that use the allocation must be
+     * completed.
+     */
+    @Override
+    public void close() throws Exception {
+        if (svm == null) {
+            return;
+        }
+        clSVMFree(context, svm);
+        log.trace("SVM buffer released {}", this);
+        svm = null;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).append("context", context).append("size", size)
+                .append("fineGrained", isFineGrained()).build();
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl;
+
+import java.util.function.Supplier;
+
+import org.jocl.Pointer;
+import org.jocl.cl_context;
+
+import com.google.inject.assistedinject.Assisted;
+
+/**
+ * Factory to create a new {@link Supplier} that supplies the {@link Pointer}
+ * of a shared virtual memory allocation.
+ *
+ * @see SvmBuffer
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+public interface SvmBufferFactory {
+
+    /**
+     * Creates a new {@link Supplier} that supplies the shared virtual memory
+     * {@link Pointer}.
+     *
+     * @param context the {@link Supplier} that supplies the {@link cl_context}.
+     * @param flags   the memory flags.
+     * @param size    the size in bytes.
+     */
+    Supplier<Pointer> create(@Assisted Supplier<cl_context> context, @Assisted("flags") long flags,
+            @Assisted("size") long size);
+}
@@ -17,8 +17,20 @@ package com.anrisoftware.easycl.corejocl
 
 import static com.anrisoftware.easycl.corejocl.Arg.*
 import static org.jocl.CL.*
+import static org.junit.jupiter.api.Assertions.assertThrows
 
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.CharBuffer
 import java.nio.FloatBuffer
+import java.nio.file.Path
+import java.time.Duration
+import java.util.function.IntToDoubleFunction
+import java.util.function.IntToLongFunction
+import java.util.function.IntUnaryOperator
+import java.util.stream.DoubleStream
+import java.util.stream.IntStream
+import java.util.stream.LongStream
 
 import javax.inject.Inject
 
@@ -30,6 +42,7 @@ import org.jocl.Sizeof
 import org.junit.jupiter.api.BeforeAll
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
 
 import com.google.inject.Guice
 import com.google.inject.Injector
@@ -62,6 +75,15 @@ class CompileProgramTest {
     @Inject
     KernelFactory kernelFactory
 
+    @Inject
+    ImageFactory imageFactory
+
+    @Inject
+    SamplerFactory samplerFactory
+
+    @Inject
+    SvmBufferFactory svmBufferFactory
+
     @Test
     void "compile and link program"() {
         def to_close = new ArrayDeque()
@@ -138,6 +160,1044 @@ int util_test_func() {
             assert dest == values
         }
 
+        char[] chars = "easycl".toCharArray()
+        def charBuffer = Buffer.fromChars(bufferFactory, context, queue, chars, false, false)
+        charBuffer.withCloseable {
+            assert charBuffer.retrieveSize() == Sizeof.cl_short * chars.length
+            def dest = CharBuffer.allocate(chars.length)
+            charBuffer.read(queue.get(), 0, Sizeof.cl_short * chars.length, dest)
+            assert dest.array() == chars
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "primitive sources"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 200000
+        def readBytes = { Buffer b, int elementSize ->
+            def dest = ByteBuffer.allocateDirect(elementSize * count).order(ByteOrder.nativeOrder())
+            b.read(queue.get(), 0, elementSize * count, dest)
+            dest
+        }
+        def sources = [
+            [Buffer.fromInt(bufferFactory, context, queue, IntStream.range(0, count).iterator(), count, true), Sizeof.cl_int, { ByteBuffer d, int i -> d.asIntBuffer().get(i) == i }],
+            [Buffer.fromInt(bufferFactory, context, queue, { it * 3 } as IntUnaryOperator, count, true, true), Sizeof.cl_int, { ByteBuffer d, int i -> d.asIntBuffer().get(i) == i * 3 }],
+            [Buffer.fromLong(bufferFactory, context, queue, LongStream.range(0, count), count, true), Sizeof.cl_long, { ByteBuffer d, int i -> d.asLongBuffer().get(i) == i }],
+            [Buffer.fromLong(bufferFactory, context, queue, { it * 5L } as IntToLongFunction, count, true, false), Sizeof.cl_long, { ByteBuffer d, int i -> d.asLongBuffer().get(i) == i * 5L }],
+            [Buffer.fromDouble(bufferFactory, context, queue, DoubleStream.iterate(0d, { it + 0.5d }).limit(count), count, true), Sizeof.cl_double, { ByteBuffer d, int i -> d.asDoubleBuffer().get(i) == i * 0.5d }],
+            [Buffer.fromDouble(bufferFactory, context, queue, { it / 2d } as IntToDoubleFunction, count, true, true), Sizeof.cl_double, { ByteBuffer d, int i -> d.asDoubleBuffer().get(i) == i / 2d }],
+            [Buffer.fromFloat(bufferFactory, context, queue, DoubleStream.iterate(0d, { it + 1d }).limit(count).iterator(), count, false), Sizeof.cl_float, { ByteBuffer d, int i -> d.asFloatBuffer().get(i) == i as float }],
+        ]
+        sources.each { Buffer b, int elementSize, check ->
+            b.withCloseable {
+                assert b.retrieveSize() == elementSize * count
+                def dest = readBytes(b, elementSize)
+                assert [0, 1, count.intdiv(2), count - 1].every { check(dest, it) }
+            }
+        }
+
+        int windows = 5 * 1024 * 1024
+        def large = (Buffer) Buffer.fromInt(bufferFactory, context, queue, { it } as IntUnaryOperator, windows, true, true)
+        large.withCloseable {
+            int[] value = new int[1]
+            [0, 4 * 1024 * 1024 - 1, 4 * 1024 * 1024, windows - 1].each {
+                large.read(queue.get(), Sizeof.cl_int * it, Sizeof.cl_int, Pointer.to(value))
+                assert value[0] == it
+            }
+        }
+
+        assertThrows(IllegalStateException) {
+            Buffer.fromInt(bufferFactory, context, queue, { throw new IllegalStateException("filler") } as IntUnaryOperator, count, true, false)
+        }
+        assertThrows(NoSuchElementException) {
+            Buffer.fromInt(bufferFactory, context, queue, IntStream.range(0, 10).iterator(), count, true)
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "async buffers"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 8
+        long size = Sizeof.cl_float * count
+        def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, size)
+        buffer.withCloseable {
+            def src = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder())
+            (0..<count).each { src.putFloat(it * Sizeof.cl_float, it) }
+            def written = buffer.writeAsync(queue.get(), 0, size, src)
+            def dest = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder())
+            def read = buffer.readAsync(queue.get(), 0, size, dest, written)
+            read.toFuture().get()
+            assert read.complete
+            assert (0..<count).collect { dest.getFloat(it * Sizeof.cl_float) } == (0..<count).collect { it as float }
+            written.close()
+            read.close()
+
+            def copy = bufferFactory.create(context, CL_MEM_READ_WRITE, size)
+            copy.withCloseable {
+                buffer.fill(queue.get(), 3f, 0, size)
+                buffer.copyTo(queue.get(), copy, 0, 0, size)
+                float[] copied = new float[count]
+                copy.read(queue.get(), copied)
+                assert copied == [3f] * count as float[]
+            }
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "mapped buffers"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 8
+        long size = Sizeof.cl_float * count
+        def buffer = Buffer.allocHostPtr(bufferFactory, context, CL_MEM_READ_WRITE, size)
+        buffer.withCloseable {
+            buffer.map(queue.get(), CL_MAP_WRITE).withCloseable { MappedBuffer m ->
+                def view = m.asFloatBuffer()
+                (0..<count).each { view.put(it, it as float) }
+            }
+            float[] dest = new float[count]
+            buffer.read(queue.get(), dest)
+            assert dest == (0..<count).collect { it as float } as float[]
+            buffer.map(queue.get(), CL_MAP_READ, Sizeof.cl_float * 4, Sizeof.cl_float * 4).withCloseable { MappedBuffer m ->
+                assert m.asFloatBuffer().get(0) == 4f
+            }
+        }
+
+        def filled = Buffer.fromFloat(bufferFactory, context, queue, { it * 2d } as IntToDoubleFunction, count, true, true)
+        filled.withCloseable {
+            float[] dest = new float[count]
+            filled.read(queue.get(), dest)
+            assert dest == (0..<count).collect { it * 2 as float } as float[]
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "pooled buffers"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        def pooledFactory = injector.getInstance(PooledBufferFactory)
+        (0..<4).each {
+            def buffer = pooledFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_float * 1000)
+            buffer.withCloseable {
+                assert buffer.retrieveSize() == Sizeof.cl_float * 1000
+                assert buffer.sizeClass == BufferPool.sizeClass(Sizeof.cl_float * 1000)
+            }
+        }
+        def statistics = pooledFactory.getStatistics(context)
+        assert statistics.misses == 1
+        assert statistics.hits == 3
+        assert statistics.idleBuffers == 1
+        pooledFactory.trim(context)
+        assert pooledFactory.getStatistics(context).idleBuffers == 0
+
+        def leased = pooledFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_float * 1000)
+        pooledFactory.trim(context)
+        leased.close()
+        assert leased.pool.statistics.idleBuffers == 0
+        assert leased.pool.statistics.released == 1
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "load buffer from file"(@TempDir Path tmp) {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int size = 1000
+        byte[] data = (0..<size).collect { (it * 7) as byte } as byte[]
+        def file = tmp.resolve("data.bin")
+        file.bytes = data
+        def loader = injector.getInstance(BufferFileLoader)
+        loader.chunkSize = 256
+
+        def loaded = loader.load(context, queue, file, CL_MEM_READ_ONLY)
+        loaded.withCloseable {
+            assert loaded.retrieveSize() == size
+            def dest = ByteBuffer.allocateDirect(size)
+            loaded.read(queue.get(), 0, size, dest)
+            byte[] result = new byte[size]
+            dest.get(result)
+            assert result == data
+        }
+
+        int offset = 100
+        def existing = bufferFactory.create(context, CL_MEM_READ_WRITE, offset + size)
+        existing.withCloseable {
+            existing.fill(queue.get(), (-1 as byte), 0, offset + size)
+            loader.load(queue.get(), existing, offset, file)
+            def dest = ByteBuffer.allocateDirect(offset + size)
+            existing.read(queue.get(), 0, offset + size, dest)
+            byte[] result = new byte[offset + size]
+            dest.get(result)
+            assert result[0..<offset].every { it == (-1 as byte) }
+            assert result[offset..<(offset + size)] == data as List
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "managed buffers"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        def managedFactory = injector.getInstance(ManagedBufferFactory)
+        int count = 1024
+        long size = Sizeof.cl_float * count
+        managedFactory.setBudget(context, 3 * size)
+        float[] values = (0..<count).collect { it as float } as float[]
+        def a = managedFactory.createSpillable(context, queue, CL_MEM_READ_WRITE, size)
+        def b = managedFactory.createSpillable(context, queue, CL_MEM_READ_WRITE, size)
+        b.write(queue.get(), 0, size, FloatBuffer.wrap(values))
+        a.write(queue.get(), 0, size, FloatBuffer.wrap(values))
+        def c = managedFactory.create(context, CL_MEM_READ_WRITE, 2 * size)
+        assert b.spilled
+        assert !a.spilled
+        assert managedFactory.getUsed(context) == 3 * size
+        float[] dest = new float[count]
+        b.read(queue.get(), dest)
+        assert dest == values
+        assert a.spilled
+        assert managedFactory.getSpills(context) == 2
+        assert managedFactory.getRestores(context) == 1
+        def increment = programFactory.create(context, """
+kernel void increment(global float* values) {
+    values[get_global_id(0)] += 1.0f;
+}
+""").buildProgram()
+        increment.withCloseable {
+            Kernel kernel = kernelFactory.create(increment, "increment", [abuffer])
+            kernel.withCloseable {
+                kernel.set(0, a)
+                assert !a.spilled
+                b.read(queue.get(), dest)
+                assert a.spilled
+                kernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(count))).call()
+                assert !a.spilled
+                assert b.spilled
+                a.read(queue.get(), dest)
+                assert dest == values.collect { it + 1f } as float[]
+                def other = queueFactory.create(context, device)
+                other.withCloseable {
+                    assertThrows(IllegalArgumentException) {
+                        kernel.enqueue(new EnqueueArgs(other.get(), NDRange.d1Range(count))).call()
+                    }
+                }
+            }
+        }
+        c.close()
+        a.close()
+        b.close()
+        assert managedFactory.getUsed(context) == 0
+        managedFactory.remove(context)
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "device arrays"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 16
+        def floats = DeviceFloatArray.create(bufferFactory, context, queue, CL_MEM_READ_WRITE, count)
+        floats.withCloseable {
+            floats.write((0..<count).collect { it as float } as float[])
+            floats.set(3, 42f)
+            assert floats.get(3) == 42f
+            float[] dest = new float[8]
+            floats.read(4, 8, dest, 2)
+            assert dest[2..5] == [4f, 5f, 6f, 7f]
+            assert floats.toArray()[15] == 15f
+        }
+        def longs = DeviceLongArray.create(bufferFactory, context, queue, CL_MEM_READ_WRITE, count)
+        longs.withCloseable {
+            longs.set(count - 1, Long.MAX_VALUE)
+            assert longs.get(count - 1) == Long.MAX_VALUE
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "mirrored buffers"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int size = 64 * 1024
+        def mirror = MirroredBuffer.create(bufferFactory, context, queue, CL_MEM_READ_WRITE, size)
+        mirror.withCloseable {
+            assert mirror.sync() == 1
+            mirror.putFloat(0, 1f).putFloat(8, 2f).putFloat(32 * 1024, 3f)
+            assert mirror.hostDirty.size() == 2
+            assert mirror.sync() == 2
+            float[] dest = new float[1]
+            mirror.buffer.read(queue.get(), 32 * 1024, 1, dest)
+            assert dest[0] == 3f
+            mirror.buffer.fill(queue.get(), 5f, 1024, 16)
+            mirror.markDeviceWritten(1024, 16)
+            assert mirror.syncFromDevice() == 1
+            assert mirror.host.getFloat(1024) == 5f
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "host segments"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int size = 1024 * 1024
+        def segment = HostSegment.allocate(bufferFactory, context, queue, size)
+        segment.withCloseable {
+            def src = ByteBuffer.allocate(size)
+            (0..<size).each { src.put(it as byte) }
+            segment.put(0, src.flip())
+            def window = segment.map(0, 16, CL_MAP_READ)
+            assert segment.openWindows == 1
+            assert window.get().get(15) == 15 as byte
+            window.close()
+            assert segment.openWindows == 0
+            def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, size)
+            buffer.withCloseable {
+                buffer.write(queue.get(), 0, size, segment, 0)
+                buffer.read(queue.get(), 0, 256, segment, size - 256)
+            }
+            def dest = ByteBuffer.allocate(256)
+            segment.get(size - 256, dest)
+            assert dest.get(255) == 255 as byte
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "rectangular transfers"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int width = 8
+        int height = 6
+        long rowPitch = Sizeof.cl_int * width
+        def ints = { int n -> ByteBuffer.allocateDirect(Sizeof.cl_int * n).order(ByteOrder.nativeOrder()) }
+        // host matrix of 5 x 4 ints
+        def src = ints(5 * 4)
+        (0..<20).each { src.putInt(Sizeof.cl_int * it, 100 + it) }
+        def expected = { int r, int c -> 100 + (1 + r) * 5 + (1 + c) }
+
+        def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, rowPitch * height)
+        def copy = bufferFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_int * 4 * 3)
+        [buffer, copy].each { to_close.push it }
+        buffer.fill(queue.get(), 0 as byte, 0, rowPitch * height)
+        copy.fill(queue.get(), 0 as byte, 0, Sizeof.cl_int * 4 * 3)
+
+        // 3 x 2 ints from host (1, 1) to buffer (2, 3)
+        long[] region = [Sizeof.cl_int * 3, 2, 1]
+        buffer.writeRect(queue.get(), [Sizeof.cl_int * 2, 3, 0] as long[], [Sizeof.cl_int * 1, 1, 0] as long[],
+                region, rowPitch, 0, Sizeof.cl_int * 5, 0, src)
+        def all = ints(width * height)
+        buffer.read(queue.get(), 0, rowPitch * height, all)
+        (0..<height).each { r ->
+            (0..<width).each { c ->
+                def inside = r in 3..4 && c in 2..4
+                assert all.getInt(Sizeof.cl_int * (r * width + c)) == (inside ? expected(r - 3, c - 2) : 0)
+            }
+        }
+
+        // back to host rows 2 and 3 with a pitch of 6 ints
+        def dest = ints(6 * 4)
+        buffer.readRect(queue.get(), [Sizeof.cl_int * 2, 3, 0] as long[], [0, 2, 0] as long[], region, rowPitch, 0,
+                Sizeof.cl_int * 6, 0, dest)
+        (0..<2).each { r ->
+            (0..<3).each { c -> assert dest.getInt(Sizeof.cl_int * ((2 + r) * 6 + c)) == expected(r, c) }
+        }
+
+        // first two ints of the first row
+        long[] pair = [Sizeof.cl_int * 2, 1, 1]
+        def written = buffer.writeRectAsync(queue.get(), [0, 0, 0] as long[], [0, 0, 0] as long[], pair, rowPitch, 0,
+                0, 0, src)
+        def pairDest = ints(2)
+        def read = buffer.readRectAsync(queue.get(), [0, 0, 0] as long[], [0, 0, 0] as long[], pair, rowPitch, 0, 0,
+                0, pairDest, written)
+        read.waitFor()
+        [written, read]*.close()
+        assert pairDest.getInt(0) == 100
+        assert pairDest.getInt(Sizeof.cl_int) == 101
+
+        // 3 x 2 ints from buffer (2, 3) to copy (1, 1) with a pitch of 4 ints
+        buffer.copyRect(queue.get(), copy, [Sizeof.cl_int * 2, 3, 0] as long[], [Sizeof.cl_int * 1, 1, 0] as long[],
+                region, rowPitch, 0, Sizeof.cl_int * 4, 0)
+        def copied = ints(4 * 3)
+        copy.read(queue.get(), 0, Sizeof.cl_int * 4 * 3, copied)
+        (0..<3).each { r ->
+            (0..<4).each { c ->
+                def inside = r in 1..2 && c in 1..3
+                assert copied.getInt(Sizeof.cl_int * (r * 4 + c)) == (inside ? expected(r - 1, c - 1) : 0)
+            }
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "slice buffers"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, 4096)
+        long align = buffer.retrieveMemBaseAddrAlign()
+        assert align > 0
+        int count = (int) (align / Sizeof.cl_float)
+        float[] values = (0..<count).collect { it as float } as float[]
+        def slice = buffer.slice(align, align, 0)
+        assert buffer.openSlices == 1
+        slice.write(queue.get(), 0, align, FloatBuffer.wrap(values))
+        float[] dest = new float[count]
+        buffer.read(queue.get(), align, count, dest)
+        assert dest == values
+        slice.close()
+        assert buffer.openSlices == 0
+        buffer.close()
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "staging ring"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 1024
+        def dest = bufferFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_float * count * 4)
+        dest.withCloseable {
+            def ring = injector.getInstance(StagingRingFactory).create(context, queue, 2, Sizeof.cl_float * count, true)
+            ring.withCloseable {
+                (0..<4).each { n ->
+                    def slot = ring.acquire()
+                    def floats = slot.buffer.asFloatBuffer()
+                    (0..<count).each { floats.put(n as float) }
+                    slot.upload(dest, Sizeof.cl_float * count * n, Sizeof.cl_float * count)
+                }
+            }
+            float[] values = new float[count * 4]
+            dest.read(queue.get(), values)
+            assert values[0] == 0f
+            assert values[count * 3] == 3f
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "images"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int width = 4
+        int height = 4
+        float[] pixels = (0..<width * height).collect { it as float } as float[]
+        def image = imageFactory.create(context, CL_MEM_READ_ONLY, Image.format(CL_R, CL_FLOAT), Image.desc2D(width, height))
+        to_close.push image
+        long[] origin = [0, 0, 0]
+        long[] region = [width, height, 1]
+        image.write(queue.get(), origin, region, 0, 0, FloatBuffer.wrap(pixels))
+        assert image.retrieveWidth() == width
+        assert image.retrieveHeight() == height
+        float[] dest = new float[width * height]
+        image.read(queue.get(), origin, region, 0, 0, FloatBuffer.wrap(dest))
+        assert dest == pixels
+
+        def sampler = samplerFactory.create(context, false, CL_ADDRESS_CLAMP_TO_EDGE, CL_FILTER_NEAREST)
+        to_close.push sampler
+        def copyImage = programFactory.create(context, """
+kernel void copyImage(read_only image2d_t image, sampler_t sampler, global float* output) {
+    int x = get_global_id(0);
+    int y = get_global_id(1);
+    output[y * get_global_size(0) + x] = read_imagef(image, sampler, (int2)(x, y)).x;
+}
+""").buildProgram()
+        copyImage.withCloseable {
+            Kernel kernel = kernelFactory.create(copyImage, "copyImage", [aimage, asampler, abuffer])
+            def output = bufferFactory.create(context, CL_MEM_WRITE_ONLY, Sizeof.cl_float * width * height)
+            output.withCloseable {
+                kernel.withCloseable {
+                    kernel.set(0, image).set(1, sampler).set(2, output)
+                    kernel.enqueue(new EnqueueArgs(queue.get(), new NDRange(2, [width, height] as long[]))).call()
+                }
+                float[] values = new float[width * height]
+                output.read(queue.get(), values)
+                assert values == pixels
+            }
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "svm buffers"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 64
+        def svm = svmBufferFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_float * count)
+        to_close.push svm
+        assert !svm.fineGrained
+        def host = svm.map(queue.get(), CL_MAP_WRITE).asFloatBuffer()
+        (0..<count).each { host.put(it as float) }
+        svm.unmap(queue.get()).close()
+        def increment = programFactory.create(context, """
+kernel void increment(global float* values) {
+    values[get_global_id(0)] += 1.0f;
+}
+""").buildProgram()
+        increment.withCloseable {
+            Kernel kernel = kernelFactory.create(increment, "increment", [asvm])
+            kernel.withCloseable {
+                kernel.set(0, svm)
+                kernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(count))).call()
+            }
+        }
+        host = svm.map(queue.get(), CL_MAP_READ).asFloatBuffer()
+        assert host.get(0) == 1f
+        assert host.get(count - 1) == count as float
+        svm.unmap(queue.get()).close()
+        clFinish(queue.get())
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "event pipeline"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 256
+        def src = ByteBuffer.allocateDirect(Sizeof.cl_float * count).order(ByteOrder.nativeOrder())
+        (0..<count).each { src.putFloat(it as float) }
+        def dest = ByteBuffer.allocateDirect(Sizeof.cl_float * count).order(ByteOrder.nativeOrder())
+        def increment = programFactory.create(context, """
+kernel void increment(global float* values) {
+    values[get_global_id(0)] += 1.0f;
+}
+""").buildProgram()
+        increment.withCloseable {
+            def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_float * count)
+            Kernel kernel = kernelFactory.create(increment, "increment", [abuffer])
+            buffer.withCloseable {
+                kernel.withCloseable {
+                    def written = buffer.writeAsync(queue.get(), 0, Sizeof.cl_float * count, src.flip())
+                    kernel.set(0, buffer)
+                    def launched = kernel.submit(new EnqueueArgs(queue.get(), NDRange.d1Range(count)).withWaitList(written))
+                    def read = buffer.readAsync(queue.get(), 0, Sizeof.cl_float * count, dest, launched)
+                    read.toFuture().get()
+                    [written, launched, read]*.close()
+                }
+            }
+        }
+        assert dest.getFloat(0) == 1f
+        assert dest.getFloat(Sizeof.cl_float * (count - 1)) == count as float
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "kernel pool"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 64
+        def fill = programFactory.create(context, """
+kernel void fill(global int* values, int value) {
+    values[get_global_id(0)] = value;
+}
+""").buildProgram()
+        fill.withCloseable {
+            def pool = injector.getInstance(KernelPoolFactory).create(fill, "fill", [abuffer, aint])
+            pool.withCloseable {
+                def threads = (0..<4).collect { n ->
+                    Thread.start {
+                        def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_int * count)
+                        buffer.withCloseable {
+                            def lease = pool.lease()
+                            lease.withCloseable {
+                                lease.get().set(0, buffer).set(1, n)
+                                lease.get().submit(new EnqueueArgs(queue.get(), NDRange.d1Range(count))).withCloseable { it.waitFor() }
+                            }
+                            def values = ByteBuffer.allocateDirect(Sizeof.cl_int * count).order(ByteOrder.nativeOrder())
+                            buffer.read(queue.get(), 0, Sizeof.cl_int * count, values)
+                            assert values.getInt(0) == n
+                        }
+                    }
+                }
+                threads*.join()
+                assert pool.size >= 1
+                assert pool.idle == pool.size
+            }
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "local memory"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 256
+        int groupSize = 64
+        def reduce = programFactory.create(context, """
+kernel void reduce(global const float* input, global float* output, local float* scratch) {
+    int lid = get_local_id(0);
+    scratch[lid] = input[get_global_id(0)];
+    barrier(CLK_LOCAL_MEM_FENCE);
+    for (int s = get_local_size(0) / 2; s > 0; s >>= 1) {
+        if (lid < s) {
+            scratch[lid] += scratch[lid + s];
+        }
+        barrier(CLK_LOCAL_MEM_FENCE);
+    }
+    if (lid == 0) {
+        output[get_group_id(0)] = scratch[0];
+    }
+}
+""").buildProgram()
+        reduce.withCloseable {
+            def input = Buffer.fromFloat(bufferFactory, context, queue, ([1f] * count) as float[], true, false)
+            def output = bufferFactory.create(context, CL_MEM_WRITE_ONLY, Sizeof.cl_float * (count / groupSize as int))
+            Kernel kernel = kernelFactory.create(reduce, "reduce", [abuffer, abuffer, alocal])
+            kernel.withCloseable {
+                assert kernel.retrieveAvailableLocalMem(device.get()) >= Sizeof.cl_float * groupSize
+                kernel.set(0, input).set(1, output).setLocal(2, Sizeof.cl_float, groupSize)
+                kernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(count), NDRange.d1Range(groupSize))).call()
+            }
+            float[] sums = new float[count / groupSize as int]
+            output.read(queue.get(), sums)
+            assert sums.every { it == groupSize as float }
+            output.close()
+            input.close()
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "local size tuner"(@TempDir Path tmp) {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform, CL_DEVICE_TYPE_ALL)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 4096
+        def scale = programFactory.create(context, """
+kernel void scale(global float* values, float factor) {
+    values[get_global_id(0)] = get_global_id(0) * factor;
+}
+""").buildProgram()
+        scale.withCloseable {
+            def tuner = injector.getInstance(LocalSizeTuner)
+            tuner.cacheFile = tmp.resolve("local-sizes.properties")
+            def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_float * count)
+            Kernel kernel = kernelFactory.create(scale, "scale", [abuffer, afloat])
+            buffer.withCloseable {
+                kernel.withCloseable {
+                    kernel.set(0, buffer).set(1, 2f)
+                    kernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(16)))
+                    def local = tuner.tune(kernel, queue.get(), NDRange.d1Range(count))
+                    assert local.dims == 0 || count % local.sizes[0] == 0
+                    assert local.dims == 0 || local.sizes[0] <= kernel.retrieveWorkGroupSize(device.get())
+                    assert tmp.resolve("local-sizes.properties").toFile().isFile()
+                    assert tuner.tune(kernel, queue.get(), NDRange.d1Range(count)) == local
+                    kernel.enqueue(tuner.tunedArgs(kernel, queue.get(), NDRange.d1Range(count))).call()
+                    float[] values = new float[count]
+                    buffer.read(queue.get(), values)
+                    assert values[count - 1] == (count - 1) * 2f
+                    def global2 = new NDRange(2, [64, 64] as long[])
+                    def local2 = tuner.tune(kernel, queue.get(), global2)
+                    assert local2.dims == 0 || (64 % local2.sizes[0] == 0 && 64 % local2.sizes[1] == 0)
+                    assert local2.dims == 0 || local2.sizes[0] * local2.sizes[1] <= kernel.retrieveWorkGroupSize(device.get())
+                    def local1000 = tuner.tune(kernel, queue.get(), NDRange.d1Range(1000))
+                    assert local1000.dims == 0 || 1000 % local1000.sizes[0] == 0
+                    kernel.set(1, 3f).enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(16)))
+                    tuner.tune(kernel, queue.get(), NDRange.d1Range(count.intdiv(2)))
+                    kernel.set(1, 4f).call()
+                    buffer.read(queue.get(), values)
+                    assert values[15] == 15 * 4f
+                    assert values[16] == 16 * 3f
+                }
+            }
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "kernel argument info"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 64
+        def axpy = programFactory.create(context, """
+kernel void axpy(global const float* x, global float* y, float a, uint n) {
+    size_t i = get_global_id(0);
+    if (i < n) {
+        y[i] += a * x[i];
+    }
+}
+""").buildProgram(KernelArgInfo.BUILD_OPTION)
+        axpy.withCloseable {
+            Kernel kernel = kernelFactory.create(axpy, "axpy")
+            kernel.withCloseable {
+                assert kernel.args == [abuffer, abuffer, afloat, aint]
+                assert kernel.retrieveArgInfos()*.name == ["x", "y", "a", "n"]
+                assert kernel.retrieveArgIndex("a") == 2
+                def x = Buffer.fromFloat(bufferFactory, context, queue, ([1f] * count) as float[], true, false)
+                def y = Buffer.fromFloat(bufferFactory, context, queue, ([2f] * count) as float[], false, false)
+                def xArg = kernel.arg("x")
+                def yArg = kernel.arg("y")
+                def aArg = kernel.arg("a")
+                def nArg = kernel.arg("n")
+                xArg.set(x)
+                yArg.set(y)
+                aArg.set(3f)
+                nArg.set(count)
+                kernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(count))).call()
+                float[] values = new float[count]
+                y.read(queue.get(), values)
+                assert values.every { it == 5f }
+                def svm = svmBufferFactory.create(context, CL_MEM_READ_ONLY, Sizeof.cl_float * count)
+                svm.withCloseable {
+                    def host = svm.map(queue.get(), CL_MAP_WRITE).asFloatBuffer()
+                    count.times { host.put(it, 2f) }
+                    svm.unmap(queue.get()).close()
+                    xArg.set(svm)
+                    kernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(count))).call()
+                    y.read(queue.get(), values)
+                    assert values.every { it == 11f }
+                }
+                assertThrows(IllegalArgumentException) { kernel.arg("z") }
+                y.close()
+                x.close()
+            }
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "kernel argument cache"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 64
+        long size = Sizeof.cl_long * count
+        def ramp = programFactory.create(context, """
+kernel void ramp(global long* out, long offset, float factor) {
+    size_t i = get_global_id(0);
+    out[i] = offset + (long)(factor * i);
+}
+""").buildProgram()
+        ramp.withCloseable {
+            Kernel kernel = kernelFactory.create(ramp, "ramp", [abuffer, along, afloat])
+            def a = bufferFactory.create(context, CL_MEM_READ_WRITE, size)
+            def b = bufferFactory.create(context, CL_MEM_READ_WRITE, size)
+            long[] values = new long[count]
+            def launch = { Buffer out ->
+                kernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(count))).call()
+                out.read(queue.get(), 0, size, Pointer.to(values))
+                values.toList()
+            }
+            kernel.withCloseable {
+                kernel.set(0, a).set(1, 5).set(2, 2f)
+                assert launch(a) == (0..<count).collect { 5L + 2 * it }
+                a.write(queue.get(), 0, size, Pointer.to(new long[count]))
+                kernel.set(0, a).set(1, 5).set(2, 2f)
+                assert launch(a) == (0..<count).collect { 5L + 2 * it }
+                kernel.set(0, b).set(1, 7L)
+                assert launch(b) == (0..<count).collect { 7L + 2 * it }
+                kernel.set(1, 1L << 40).set(2, 1)
+                assert launch(b) == (0..<count).collect { (1L << 40) + it }
+                kernel.clearArgCache()
+                kernel.set(0, a).set(1, 9 as short).set(2, 3f)
+                assert launch(a) == (0..<count).collect { 9L + 3 * it }
+            }
+            b.close()
+            a.close()
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "chunked launch"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 4096
+        def index = programFactory.create(context, """
+kernel void index(global int* values) {
+    values[get_global_id(0)] = get_global_id(0);
+}
+""").buildProgram()
+        index.withCloseable {
+            def buffer = bufferFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_int * count)
+            Kernel kernel = kernelFactory.create(index, "index", [abuffer])
+            buffer.withCloseable {
+                kernel.withCloseable {
+                    kernel.set(0, buffer).enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(count)))
+                    def chunks = []
+                    int n = kernel.chunked(new EnqueueArgs(queue.get(), NDRange.d1Range(count), NDRange.d1Range(64)))
+                            .setChunkSize(1000)
+                            .setListener({ offset, global, nanos -> chunks << [offset.sizes[0], global.sizes[0]] } as ChunkedLaunch.ChunkListener)
+                            .launch()
+                    assert n == 4
+                    assert chunks == [[0, 1024], [1024, 1024], [2048, 1024], [3072, 1024]]
+                    def values = ByteBuffer.allocateDirect(Sizeof.cl_int * count).order(ByteOrder.nativeOrder())
+                    buffer.read(queue.get(), 0, Sizeof.cl_int * count, values)
+                    assert (0..<count).every { values.getInt(Sizeof.cl_int * it) == it }
+
+                    long covered = 0
+                    kernel.chunked(new EnqueueArgs(queue.get(), NDRange.d1Range(count)))
+                            .setTargetTime(Duration.ofMillis(1))
+                            .setListener({ offset, global, nanos -> covered += global.sizes[0] } as ChunkedLaunch.ChunkListener)
+                            .call()
+                    assert covered == count
+                    buffer.write(queue.get(), 0, Sizeof.cl_int * count, Pointer.to(new int[count]))
+                    kernel.call()
+                    buffer.read(queue.get(), 0, Sizeof.cl_int * count, values.clear())
+                    assert (0..<count).every { values.getInt(Sizeof.cl_int * it) == it }
+                }
+            }
+        }
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "fusion engine"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        def queue = queueFactory.create(context, device)
+        to_close.push queue
+
+        int count = 1024
+        def engine = injector.getInstance(FusionEngine)
+        def a = Buffer.fromFloat(bufferFactory, context, queue, ([1f] * count) as float[], true, false)
+        def b = Buffer.fromFloat(bufferFactory, context, queue, ([0.5f] * count) as float[], true, false)
+        def out = bufferFactory.create(context, CL_MEM_READ_WRITE, Sizeof.cl_float * count)
+        [a, b, out].each { to_close.push it }
+        def x = ElementwiseExpr.input(a)
+        def y = ElementwiseExpr.input(b)
+        engine.evaluate(queue.get(), x.mul(3f).add(y).sub(1f).clamp(0f, 2f), out, count)
+        float[] values = new float[count]
+        out.read(queue.get(), values)
+        assert values.every { it == 2f }
+        engine.evaluate(queue.get(), y.mul(2f).add(x).sub(3f).clamp(-1f, 1f), out, count)
+        out.read(queue.get(), values)
+        assert values.every { it == -1f }
+        assert engine.cacheSize == 1
+        engine.release(context)
+        assert engine.cacheSize == 0
+        engine.evaluate(queue.get(), x.add(y), out, count)
+        out.read(queue.get(), values)
+        assert values.every { it == 1.5f }
+        assert engine.cacheSize == 1
+        engine.release(context)
+        assert engine.cacheSize == 0
+
+        to_close.forEach { it.close() }
+    }
+
+    @Test
+    void "queue profiling"() {
+        def to_close = new ArrayDeque()
+        def platform = platformFactory.create()
+        def device = deviceFactory.create(platform)
+        to_close.push device
+        def context = contextFactory.create(platform, device)
+        to_close.push context
+        CommandQueue queue = queueFactory.create(context, device, true)
+        to_close.push queue
+
+        int count = 1024
+        def increment = programFactory.create(context, """
+kernel void increment(global float* values) {
+    values[get_global_id(0)] += 1.0f;
+}
+""").buildProgram()
+        increment.withCloseable {
+            def buffer = Buffer.fromFloat(bufferFactory, context, queue, ([0f] * count) as float[], false, false)
+            Kernel kernel = kernelFactory.create(increment, "increment", [abuffer])
+            buffer.withCloseable {
+                kernel.withCloseable {
+                    kernel.set(0, buffer)
+                    10.times { kernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(count))).call() }
+                    float[] values = new float[count]
+                    buffer.read(queue.get(), values)
+                    assert values.every { it == 10f }
+                    float[] rect = new float[16]
+                    buffer.readRect(queue.get(), [0, 0, 0] as long[], [0, 0, 0] as long[], [Sizeof.cl_float * 4, 4, 1] as long[],
+                            0, 0, 0, 0, FloatBuffer.wrap(rect))
+                    assert rect.every { it == 10f }
+                    buffer.map(queue.get(), CL_MAP_READ).close()
+                }
+            }
+        }
+        clFinish(queue.get())
+        def profiler = queue.profiler
+        def names = ["increment", "read", "readRect", "map", "unmap"]
+        def deadline = System.currentTimeMillis() + 5000
+        while ((profiler.getLatencies("increment").execution.count < 10 || !profiler.names.containsAll(names))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assert profiler.names.containsAll(names)
+        assert profiler.getLatencies("increment").execution.count == 10
+        assert profiler.getLatencies("increment").execution.max > 0
+
         to_close.forEach { it.close() }
     }
 
@@ -161,7 +1221,7 @@ kernel void updateGlobal() {
 }
 """).buildProgram()
         updateGlobal.withCloseable {
-            Kernel noargsKernel = kernelFactory.create(updateGlobal, "updateGlobal", [Arg.aint])
+            Kernel noargsKernel = kernelFactory.create(updateGlobal, "updateGlobal")
             noargsKernel.withCloseable {
                 noargsKernel.enqueue(new EnqueueArgs(queue.get(), NDRange.d1Range(1))).call()
             }
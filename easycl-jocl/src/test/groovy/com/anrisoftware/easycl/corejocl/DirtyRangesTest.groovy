@@ -0,0 +1,54 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl
+
+import java.util.stream.Stream
+
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.Arguments
+import org.junit.jupiter.params.provider.MethodSource
+
+/**
+ * @see DirtyRanges
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+class DirtyRangesTest {
+
+    static dirtyRangesData() {
+        Stream.of(
+                Arguments.of(0, [[0, 4]], [[0, 4]]),
+                Arguments.of(0, [[0, 4], [4, 8]], [[0, 8]]),
+                Arguments.of(0, [[0, 4], [5, 8]], [[0, 4], [5, 8]]),
+                Arguments.of(1, [[0, 4], [5, 8]], [[0, 8]]),
+                Arguments.of(0, [[8, 12], [0, 4]], [[0, 4], [8, 12]]),
+                Arguments.of(0, [[0, 4], [8, 12], [2, 10]], [[0, 12]]),
+                Arguments.of(0, [[2, 3], [0, 10]], [[0, 10]]),
+                Arguments.of(16, [[0, 4], [100, 104], [20, 24]], [[0, 24], [100, 104]]),
+                Arguments.of(0, [[5, 5]], []))
+    }
+
+    @ParameterizedTest
+    @MethodSource("dirtyRangesData")
+    void "add ranges"(long gap, List ranges, List expected) {
+        def dirty = new DirtyRanges(gap)
+        ranges.each { dirty.add(it[0], it[1]) }
+        def result = []
+        dirty.forEach({ from, to -> result << [from, to] } as DirtyRanges.RangeConsumer)
+        assert result == expected
+        assert dirty.size() == expected.size()
+        assert dirty.length == expected.sum(0) { it[1] - it[0] }
+    }
+}
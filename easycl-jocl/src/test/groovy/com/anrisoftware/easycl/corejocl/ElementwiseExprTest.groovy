@@ -0,0 +1,56 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl
+
+import org.jocl.cl_context
+import org.jocl.cl_mem
+import org.junit.jupiter.api.Test
+
+/**
+ * @see ElementwiseExpr
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+class ElementwiseExprTest {
+
+    @Test
+    void "signature of expression shape"() {
+        def a = new Buffer(null as cl_context, null as cl_mem)
+        def b = new Buffer(null as cl_context, null as cl_mem)
+        def x = ElementwiseExpr.input(a)
+        def expr = x.mul(2f).add(ElementwiseExpr.input(b)).add(x).clamp(0f, 1f)
+        assert expr.signature == "clamp((((in0[i] * c0) + in1[i]) + in0[i]), c1, c2)"
+        assert expr.inputs.size() == 2
+        assert expr.inputs[0].is(a)
+        assert expr.inputs[1].is(b)
+        assert expr.constants == [2f, 0f, 1f] as float[]
+        def other = ElementwiseExpr.input(b).mul(3f).add(ElementwiseExpr.input(a)).add(ElementwiseExpr.input(b)).clamp(-1f, 1f)
+        assert other.signature == expr.signature
+        assert other.constants == [3f, -1f, 1f] as float[]
+    }
+
+    @Test
+    void "kernel source"() {
+        def a = new Buffer(null as cl_context, null as cl_mem)
+        def source = ElementwiseExpr.input(a).relu().toSource("fused")
+        assert source == """kernel void fused(global const float* in0, global float* out, float c0, uint n) {
+    size_t i = get_global_id(0);
+    if (i < n) {
+        out[i] = fmax(in0[i], c0);
+    }
+}
+"""
+    }
+}
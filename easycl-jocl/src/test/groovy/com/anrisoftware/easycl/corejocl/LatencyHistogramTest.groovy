@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl
+
+import java.util.stream.Stream
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.Arguments
+import org.junit.jupiter.params.provider.MethodSource
+
+/**
+ * @see LatencyHistogram
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+class LatencyHistogramTest {
+
+    static bucketsData() {
+        Stream.of(
+                Arguments.of(0L, 0, 0L),
+                Arguments.of(3L, 3, 3L),
+                Arguments.of(4L, 4, 4L),
+                Arguments.of(7L, 7, 7L),
+                Arguments.of(8L, 8, 9L),
+                Arguments.of(1000L, 35, 1023L),
+                Arguments.of(Long.MAX_VALUE, 247, Long.MAX_VALUE))
+    }
+
+    @ParameterizedTest
+    @MethodSource("bucketsData")
+    void "buckets"(long value, int bucket, long upperBound) {
+        assert LatencyHistogram.bucket(value) == bucket
+        assert LatencyHistogram.upperBound(bucket) == upperBound
+        assert LatencyHistogram.upperBound(bucket) >= value
+    }
+
+    @Test
+    void "percentiles"() {
+        def h = new LatencyHistogram()
+        assert h.getPercentile(50) == 0
+        (1..100).each { h.record(it * 1000L) }
+        assert h.count == 100
+        assert h.min == 1000
+        assert h.max == 100000
+        assert h.mean == 50500
+        assert h.getPercentile(100) == 100000
+        long p50 = h.getPercentile(50)
+        assert p50 >= 50000 && p50 <= 50000 * 1.25
+        long p99 = h.getPercentile(99)
+        assert p99 >= 99000 && p99 <= 100000
+        h.record(-5)
+        assert h.min == 0
+        h.reset()
+        assert h.count == 0
+        assert h.max == 0
+    }
+}
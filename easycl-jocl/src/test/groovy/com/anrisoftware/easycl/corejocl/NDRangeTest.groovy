@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2021 Erwin Müller (erwin@muellerpublic.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anrisoftware.easycl.corejocl
+
+import java.util.stream.Stream
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.Arguments
+import org.junit.jupiter.params.provider.MethodSource
+
+/**
+ * @see NDRange
+ * @author Erwin Müller, {@code <erwin@muellerpublic.de>}
+ */
+class NDRangeTest {
+
+    @Test
+    void "dimensions"() {
+        assert NDRange.d0Range().dims == 0
+        assert NDRange.d1Range(8).dims == 1
+        assert NDRange.d2Range(8, 4).dims == 2
+        assert NDRange.d3Range(8, 4, 2).dims == 3
+        assert NDRange.of(8, 4) == NDRange.d2Range(8, 4)
+        assert NDRange.d3Range(8, 4, 2).total == 64
+    }
+
+    static roundUpData() {
+        Stream.of(
+                Arguments.of([100], [16], [112]),
+                Arguments.of([96], [16], [96]),
+                Arguments.of([1920, 1080], [16, 16], [1920, 1088]),
+                Arguments.of([10, 10, 10], [4, 2, 1], [12, 10, 10]),
+                Arguments.of([1], [64], [64]))
+    }
+
+    @ParameterizedTest
+    @MethodSource("roundUpData")
+    void "round up"(List global, List local, List expected) {
+        def padded = NDRange.of(global as long[]).roundUp(NDRange.of(local as long[]))
+        assert padded == NDRange.of(expected as long[])
+    }
+
+    @Test
+    void "padded enqueue args"() {
+        def args = EnqueueArgs.padded(null, NDRange.d2Range(1920, 1080), NDRange.d2Range(16, 16), 2)
+        assert args.global == NDRange.d2Range(1920, 1088)
+        assert args.bounds == NDRange.d2Range(1920, 1080)
+        assert args.boundsArg == 2
+        assert args.withWaitList().bounds == args.bounds
+        assert NDRange.d1Range(100).roundUp(NDRange.d0Range()) == NDRange.d1Range(100)
+    }
+}